@@ -0,0 +1,36 @@
+package org.kite.movieindex.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.kite.movieindex.dao.MovieIndexer;
+import org.springframework.beans.DirectFieldAccessor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A {@link MovieIndexer} over a temporary directory, configured with the defaults of the indexer itself
+ */
+class BenchmarkIndex implements AutoCloseable {
+    private final Path path;
+    private final MovieIndexer indexer = new MovieIndexer();
+
+    BenchmarkIndex() throws IOException {
+        path = Files.createTempDirectory("movie-index-bench");
+        new DirectFieldAccessor(indexer).setPropertyValue("mainIndexPath", path.toString());
+        indexer.init();
+    }
+
+    MovieIndexer getIndexer() {
+        return indexer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            indexer.close();
+        } finally {
+            FileUtils.deleteQuietly(path.toFile());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.kite.movieindex.benchmark;
+
+import org.kite.movieindex.dao.MovieIndexer;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * An index filled with a generated corpus once per trial, shared by all benchmark threads
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+    private static final int BATCH_SIZE = 10000;
+
+    @Param({"100000"})
+    private int corpusSize;
+
+    @Param({"8"})
+    private double meanCastSize;
+
+    @Param({"5000"})
+    private int directors;
+
+    private BenchmarkIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        index = new BenchmarkIndex();
+
+        MovieCorpusGenerator generator = new MovieCorpusGenerator(42, directors, directors * 10, meanCastSize,
+                (int) meanCastSize * 5);
+        for (int i = 0; i < corpusSize; i += BATCH_SIZE) {
+            index.getIndexer().index(generator.generate(Math.min(BATCH_SIZE, corpusSize - i)));
+        }
+        index.getIndexer().commit();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    public MovieIndexer getIndexer() {
+        return index.getIndexer();
+    }
+}
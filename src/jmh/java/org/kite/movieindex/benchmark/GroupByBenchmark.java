@@ -0,0 +1,54 @@
+package org.kite.movieindex.benchmark;
+
+import org.apache.lucene.search.Query;
+import org.kite.movieindex.dao.IndexField;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Genre;
+import org.kite.movieindex.entity.Group;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Facet counting latency of {@code MovieIndexer.groupBy} for every groupable field, over all movies and over a
+ * filtered subset
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GroupByBenchmark {
+    @Param({"DIRECTOR", "CAST", "GENRE", "YEAR", "RELEASE_DATE", "RATING"})
+    private IndexField field;
+
+    private Query matchAll;
+    private Query filtered;
+
+    @Setup
+    public void setUp() {
+        matchAll = new FilterForm().buildQuery();
+
+        FilterForm form = new FilterForm();
+        form.setGenres(new FilterForm.FilterSection<>(Collections.singletonList(Genre.COMEDY)));
+        filtered = form.buildQuery();
+    }
+
+    @Benchmark
+    public List<Group> matchAll(CorpusState corpus) throws IOException {
+        return corpus.getIndexer().groupBy(matchAll, field);
+    }
+
+    @Benchmark
+    public List<Group> filtered(CorpusState corpus) throws IOException {
+        return corpus.getIndexer().groupBy(filtered, field);
+    }
+}
@@ -0,0 +1,61 @@
+package org.kite.movieindex.benchmark;
+
+import org.kite.movieindex.entity.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency distribution of {@code MovieIndexer.index} for batches of generated movies
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IndexingBenchmark {
+    @Param({"10", "1000"})
+    private int batchSize;
+
+    @Param({"8"})
+    private double meanCastSize;
+
+    @Param({"1000"})
+    private int directors;
+
+    private BenchmarkIndex index;
+    private List<List<Movie>> batches;
+    private int nextBatch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        index = new BenchmarkIndex();
+
+        MovieCorpusGenerator generator = new MovieCorpusGenerator(42, directors, directors * 10, meanCastSize,
+                (int) meanCastSize * 5);
+        batches = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batches.add(generator.generate(batchSize));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public void index() throws IOException {
+        index.getIndexer().index(batches.get(nextBatch++ % batches.size()));
+    }
+}
@@ -0,0 +1,110 @@
+package org.kite.movieindex.benchmark;
+
+import org.kite.movieindex.entity.Genre;
+import org.kite.movieindex.entity.Movie;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a reproducible synthetic movie corpus. Directors and actors are drawn from pools of a fixed size, cast
+ * list lengths follow a geometric distribution around the configured mean, ratings and release dates are uniform.
+ */
+public class MovieCorpusGenerator {
+    private static final String[] WORDS = {"Dark", "Night", "Return", "Last", "King", "Love", "War", "Story", "Star",
+        "City", "Lost", "Blood", "Secret", "Dream", "Fire", "Ghost", "Summer", "Road", "Empire", "Island", "Time",
+        "Silent", "Golden", "Wild", "River", "Shadow", "Storm", "House", "Code", "Game"};
+    private static final String[] FIRST_NAMES = {"John", "Uma", "Bruce", "Quentin", "Robert", "Steven", "Will",
+        "Samuel", "Daniel", "Emma", "Scarlett", "Tom", "Meryl", "Denzel", "Cate", "Keanu", "Natalie", "Brad"};
+    private static final String[] LAST_NAMES = {"Travolta", "Thurman", "Willis", "Tarantino", "Rodriguez",
+        "Spielberg", "Smith", "Jackson", "Radcliffe", "Stone", "Johansson", "Hanks", "Streep", "Washington",
+        "Blanchett", "Reeves", "Portman", "Pitt"};
+
+    private final Random random;
+    private final List<String> directors;
+    private final List<String> actors;
+    private final double meanCastSize;
+    private final int maxCastSize;
+
+    /**
+     * @param seed seed of the random generator, the same seed gives the same corpus
+     * @param directorCount number of distinct directors
+     * @param actorCount number of distinct actors
+     * @param meanCastSize mean length of a cast list
+     * @param maxCastSize cast lists longer than that are cut
+     */
+    public MovieCorpusGenerator(long seed, int directorCount, int actorCount, double meanCastSize, int maxCastSize) {
+        this.random = new Random(seed);
+        this.directors = generatePeople(directorCount);
+        this.actors = generatePeople(actorCount);
+        this.meanCastSize = meanCastSize;
+        this.maxCastSize = maxCastSize;
+    }
+
+    public List<Movie> generate(int count) {
+        List<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            movies.add(next());
+        }
+
+        return movies;
+    }
+
+    public Movie next() {
+        Movie movie = new Movie();
+        movie.setName(word() + " " + word() + " " + random.nextInt(1000));
+        movie.setDirector(directors.get(random.nextInt(directors.size())));
+
+        int castSize = Math.min(maxCastSize, 1 + geometric(meanCastSize - 1));
+        List<String> cast = new ArrayList<>(castSize);
+        for (int i = 0; i < castSize; i++) {
+            cast.add(actors.get(random.nextInt(actors.size())));
+        }
+        movie.setCast(cast);
+
+        Genre[] allGenres = Genre.values();
+        Set<Genre> genres = EnumSet.noneOf(Genre.class);
+        int genresCount = 1 + random.nextInt(allGenres.length);
+        for (int i = 0; i < genresCount; i++) {
+            genres.add(allGenres[random.nextInt(allGenres.length)]);
+        }
+        movie.setGenres(new ArrayList<>(genres));
+
+        movie.setRating(Math.round(random.nextFloat() * 100) / 10F);
+        LocalDate date = LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 67));
+        movie.setReleaseDate(Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+
+        return movie;
+    }
+
+    private List<String> generatePeople(int count) {
+        int combinations = FIRST_NAMES.length * LAST_NAMES.length;
+        List<String> people = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = FIRST_NAMES[i % FIRST_NAMES.length] + " "
+                    + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+            people.add(i < combinations ? name : name + " " + (i / combinations)); // exactly count distinct names
+        }
+
+        return people;
+    }
+
+    private int geometric(double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+
+        double p = 1 / (mean + 1);
+        return (int) Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+}
@@ -0,0 +1,165 @@
+package org.kite.movieindex.benchmark;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.kite.movieindex.dao.IndexField;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Genre;
+import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.SearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search latency for every kind of {@link FilterForm} clause, sorting and deep paging
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark {
+    private static final int DEEP_PAGE = 500;
+
+    private FilterForm matchAll;
+    private FilterForm searchString;
+    private FilterForm director;
+    private FilterForm cast;
+    private FilterForm releaseDate;
+    private FilterForm rating;
+    private FilterForm anyGenre;
+    private FilterForm allGenres;
+    private FilterForm singleKeySort;
+    private FilterForm multiKeySort;
+    private FilterForm deepPage;
+    private FilterForm deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) throws IOException {
+        matchAll = new FilterForm();
+
+        searchString = new FilterForm();
+        searchString.setSearchString("Tarantino");
+
+        director = new FilterForm();
+        director.setDirector("Spielberg");
+
+        cast = new FilterForm();
+        cast.setCast("Thurman");
+
+        releaseDate = new FilterForm();
+        releaseDate.setReleaseDateBetween(new ImmutablePair<>(toDate(LocalDate.of(1990, 1, 1)),
+                toDate(LocalDate.of(1999, 12, 31))));
+
+        rating = new FilterForm();
+        rating.setRatingBetween(new ImmutablePair<>(7.5F, 10F));
+
+        anyGenre = new FilterForm();
+        anyGenre.setGenres(new FilterForm.FilterSection<>(Arrays.asList(Genre.ACTION, Genre.HORROR)));
+
+        allGenres = new FilterForm();
+        allGenres.setGenres(new FilterForm.FilterSection<>(Arrays.asList(Genre.ACTION, Genre.COMEDY), true));
+
+        singleKeySort = new FilterForm();
+        singleKeySort.setOrderBy(Collections.singletonList(new FilterForm.OrderBy(IndexField.RATING, true)));
+
+        multiKeySort = new FilterForm();
+        multiKeySort.setOrderBy(Arrays.asList(new FilterForm.OrderBy(IndexField.RATING, true),
+                new FilterForm.OrderBy(IndexField.RELEASE_DATE, true), new FilterForm.OrderBy(IndexField.NAME, false)));
+
+        deepPage = new FilterForm();
+        deepPage.setOrderBy(multiKeySort.getOrderBy());
+        deepPage.setPage(DEEP_PAGE);
+
+        // Walk the cursor up to the same page once, so the benchmark measures a single deep cursor page
+        deepCursor = new FilterForm();
+        deepCursor.setOrderBy(multiKeySort.getOrderBy());
+        for (int i = 1; i < DEEP_PAGE; i++) {
+            deepCursor.setCursor(search(corpus, deepCursor).getCursor());
+        }
+    }
+
+    @Benchmark
+    public SearchResult<Movie> matchAll(CorpusState corpus) throws IOException {
+        return search(corpus, matchAll);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> searchString(CorpusState corpus) throws IOException {
+        return search(corpus, searchString);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> director(CorpusState corpus) throws IOException {
+        return search(corpus, director);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> cast(CorpusState corpus) throws IOException {
+        return search(corpus, cast);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> releaseDateRange(CorpusState corpus) throws IOException {
+        return search(corpus, releaseDate);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> ratingRange(CorpusState corpus) throws IOException {
+        return search(corpus, rating);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> anyGenre(CorpusState corpus) throws IOException {
+        return search(corpus, anyGenre);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> allGenres(CorpusState corpus) throws IOException {
+        return search(corpus, allGenres);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> singleKeySort(CorpusState corpus) throws IOException {
+        return search(corpus, singleKeySort);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> multiKeySort(CorpusState corpus) throws IOException {
+        return search(corpus, multiKeySort);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> deepPage(CorpusState corpus) throws IOException {
+        return search(corpus, deepPage);
+    }
+
+    @Benchmark
+    public SearchResult<Movie> deepCursor(CorpusState corpus) throws IOException {
+        return search(corpus, deepCursor);
+    }
+
+    private static SearchResult<Movie> search(CorpusState corpus, FilterForm form) throws IOException {
+        if (form.getCursor() != null) {
+            return corpus.getIndexer().search(form.buildQuery(), form.buildSort(), form.getCursor(),
+                    form.getPageSize());
+        }
+
+        return corpus.getIndexer().search(form.buildQuery(), form.buildSort(), form.getPage(), form.getPageSize());
+    }
+
+    private static Date toDate(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
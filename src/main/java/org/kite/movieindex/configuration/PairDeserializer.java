@@ -0,0 +1,68 @@
+package org.kite.movieindex.configuration;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+
+/**
+ * Reads a {@link Pair} from {"left": ..., "right": ...}, either side may be missing or null. The sides are read as
+ * the type arguments of the property, e.g. dates for {@code Pair<Date, Date>}.
+ */
+public class PairDeserializer extends JsonDeserializer<Pair<?, ?>> implements ContextualDeserializer {
+    private final JavaType leftType;
+    private final JavaType rightType;
+
+    public PairDeserializer() {
+        this(null, null);
+    }
+
+    private PairDeserializer(JavaType leftType, JavaType rightType) {
+        this.leftType = leftType;
+        this.rightType = rightType;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property) {
+        JavaType type = property != null ? property.getType() : ctxt.getContextualType();
+        return new PairDeserializer(type.containedTypeOrUnknown(0), type.containedTypeOrUnknown(1));
+    }
+
+    @Override
+    public Pair<?, ?> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.getCurrentToken() == JsonToken.START_OBJECT) {
+            p.nextToken();
+        }
+
+        Object left = null;
+        Object right = null;
+        for (; p.getCurrentToken() == JsonToken.FIELD_NAME; p.nextToken()) {
+            String name = p.getCurrentName();
+            p.nextToken();
+            if ("left".equals(name)) {
+                left = readSide(p, ctxt, leftType);
+            } else if ("right".equals(name)) {
+                right = readSide(p, ctxt, rightType);
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        if (p.getCurrentToken() != JsonToken.END_OBJECT) {
+            return (Pair<?, ?>) ctxt.handleUnexpectedToken(Pair.class, p);
+        }
+
+        return ImmutablePair.of(left, right);
+    }
+
+    private static Object readSide(JsonParser p, DeserializationContext ctxt, JavaType type) throws IOException {
+        return p.getCurrentToken() == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, type);
+    }
+}
@@ -0,0 +1,45 @@
+package org.kite.movieindex.configuration;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class WebConfig {
+    @Value("${main.web.search.threads}")
+    private int searchThreads = Runtime.getRuntime().availableProcessors();
+
+    @Value("${main.web.search.queue}")
+    private int searchQueue = 100; // searches waiting for a thread, beyond that requests are rejected with 503
+
+    /**
+     * Runs the searches of web requests, so slow ones hold a thread of this pool instead of a servlet container one.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService searchRequestExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(searchThreads, searchThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(searchQueue), r -> {
+                    Thread thread = new Thread(r, "search-request-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Picked up by Spring Boot's object mapper, lets {@code FilterForm} ranges be posted as JSON.
+     */
+    @Bean
+    public Module pairModule() {
+        return new SimpleModule("pair").addDeserializer(Pair.class, new PairDeserializer());
+    }
+}
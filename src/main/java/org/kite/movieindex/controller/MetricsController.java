@@ -0,0 +1,21 @@
+package org.kite.movieindex.controller;
+
+import org.kite.movieindex.service.MovieSearchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("stats")
+public class MetricsController {
+    @Autowired
+    private MovieSearchService searchService;
+
+    @RequestMapping(method = RequestMethod.GET)
+    public Map<String, Object> getMetrics() {
+        return searchService.getMetrics();
+    }
+}
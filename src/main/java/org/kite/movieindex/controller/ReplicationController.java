@@ -0,0 +1,55 @@
+package org.kite.movieindex.controller;
+
+import org.kite.movieindex.dao.MovieIndexer;
+import org.kite.movieindex.entity.ReplicationCommit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Serves the commits of a primary to replicas configured with its URL as main.index.replication.source.
+ */
+@RestController
+@RequestMapping("replication")
+public class ReplicationController {
+    @Autowired
+    private MovieIndexer indexer;
+
+    @RequestMapping(value = "{shard}", method = RequestMethod.GET)
+    public ReplicationCommit getCommit(@PathVariable int shard) throws IOException {
+        return indexer.getReplicationCommit(shard);
+    }
+
+    /**
+     * The file name is a parameter, as a path segment its extension would be taken for a requested media type
+     */
+    @RequestMapping(value = "{shard}/files", method = RequestMethod.GET)
+    public void getFile(@PathVariable int shard, @RequestParam String name, HttpServletResponse response)
+            throws IOException {
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        indexer.copyReplicationFile(shard, name, response.getOutputStream());
+    }
+
+    @ExceptionHandler({FileNotFoundException.class, IndexOutOfBoundsException.class})
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public void onNotFound() {
+        // no such shard, or a file that isn't part of a served commit
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public void onReplica() {
+        // replicas don't serve commits
+    }
+}
@@ -1,23 +1,136 @@
 package org.kite.movieindex.controller;
 
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.kite.movieindex.dao.IndexField;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Group;
 import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.SearchResult;
+import org.kite.movieindex.service.MovieSearchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Searches run on the search request executor, the servlet thread is released as soon as a search is queued. When
+ * the queue is full the request is rejected with 503, when a search takes longer than
+ * spring.mvc.async.request-timeout the client gets a 503 too.
+ */
 @RestController
 @RequestMapping("search")
 public class SearchController {
+    @Autowired
+    private MovieSearchService searchService;
+
+    @Autowired
+    @Qualifier("searchRequestExecutor")
+    private ExecutorService executor;
+
+    /**
+     * Simple searches, ranges come as separate parameters and order as orderBy[0].field=RATING&orderBy[0].desc=true
+     */
     @RequestMapping(method = RequestMethod.GET)
-    public List<Movie> getMovies() {
-        return Collections.singletonList(new Movie());
+    public DeferredResult<SearchResult<Movie>> getMovies(
+            FilterForm form,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date releasedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date releasedTo,
+            @RequestParam(required = false) Float ratingFrom,
+            @RequestParam(required = false) Float ratingTo) {
+        setRanges(form, releasedFrom, releasedTo, ratingFrom, ratingTo);
+        return async(() -> searchService.search(form));
     }
 
     @RequestMapping(method = RequestMethod.POST)
-    public List<Movie> searchMovies() {
-        return Collections.singletonList(new Movie());
+    public DeferredResult<SearchResult<Movie>> searchMovies(@RequestBody FilterForm form) {
+        return async(() -> searchService.search(form));
+    }
+
+    @RequestMapping(value = "groups/{field}", method = RequestMethod.GET)
+    public DeferredResult<List<Group>> getGroups(
+            @PathVariable IndexField field,
+            FilterForm form,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date releasedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date releasedTo,
+            @RequestParam(required = false) Float ratingFrom,
+            @RequestParam(required = false) Float ratingTo) {
+        setRanges(form, releasedFrom, releasedTo, ratingFrom, ratingTo);
+        return async(() -> searchService.groupBy(form, field));
+    }
+
+    @RequestMapping(value = "groups/{field}", method = RequestMethod.POST)
+    public DeferredResult<List<Group>> groupMovies(@PathVariable IndexField field, @RequestBody FilterForm form) {
+        return async(() -> searchService.groupBy(form, field));
+    }
+
+    /**
+     * Several facets of the same movies at once, cheaper than asking for them one by one.
+     */
+    @RequestMapping(value = "groups", method = RequestMethod.POST)
+    public DeferredResult<Map<IndexField, List<Group>>> groupMovies(@RequestParam Set<IndexField> fields,
+                                                                    @RequestBody FilterForm form) {
+        return async(() -> searchService.groupBy(form, fields));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void onOverload() {
+        // no-op
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public void onBadRequest() {
+        // e.g. a malformed cursor
+    }
+
+    private <T> DeferredResult<T> async(Callable<T> search) {
+        DeferredResult<T> result = new DeferredResult<>();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return search.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor); // throws RejectedExecutionException when the queue is full
+
+        future.whenComplete((value, e) -> {
+            if (e != null) {
+                result.setErrorResult(e instanceof CompletionException ? e.getCause() : e);
+            } else {
+                result.setResult(value);
+            }
+        });
+        result.onTimeout(() -> future.cancel(false)); // a search still waiting in the queue is then skipped
+        return result;
+    }
+
+    private static void setRanges(FilterForm form, Date releasedFrom, Date releasedTo, Float ratingFrom,
+                                  Float ratingTo) {
+        if (releasedFrom != null || releasedTo != null) {
+            form.setReleaseDateBetween(new ImmutablePair<>(releasedFrom, releasedTo));
+        }
+        if (ratingFrom != null || ratingTo != null) {
+            form.setRatingBetween(new ImmutablePair<>(ratingFrom, ratingTo));
+        }
     }
 }
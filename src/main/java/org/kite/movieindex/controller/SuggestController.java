@@ -0,0 +1,25 @@
+package org.kite.movieindex.controller;
+
+import org.kite.movieindex.entity.Suggestion;
+import org.kite.movieindex.service.MovieSearchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+
+@RestController
+@RequestMapping("suggest")
+public class SuggestController {
+    @Autowired
+    private MovieSearchService searchService;
+
+    @RequestMapping(method = RequestMethod.GET)
+    public List<Suggestion> suggest(@RequestParam String text, @RequestParam(defaultValue = "10") int count)
+            throws IOException {
+        return searchService.suggest(text, count);
+    }
+}
@@ -0,0 +1,83 @@
+package org.kite.movieindex.dao;
+
+import org.kite.movieindex.entity.Movie;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Feeds a stream of movies to a {@link MovieSink} from a pool of worker threads. The queue of pending movies is
+ * bounded: once it is full, the thread reading the stream indexes the next movie itself, which slows reading down
+ * to the pace of the workers.
+ */
+public class BulkIndexer {
+    private final int threads;
+    private final int queueSize;
+
+    public BulkIndexer(int threads, int queueSize) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Indexes all the movies, stopping at the first failure.
+     *
+     * @return number of indexed movies
+     */
+    public long index(Iterator<Movie> movies, MovieSink sink) throws IOException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "bulk-indexer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        AtomicLong count = new AtomicLong();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            while (movies.hasNext() && failure.get() == null) {
+                Movie movie = movies.next();
+                executor.execute(() -> {
+                    if (failure.get() != null) {
+                        return;
+                    }
+
+                    try {
+                        sink.accept(movie);
+                        count.incrementAndGet();
+                    } catch (IOException | RuntimeException e) { // the pool thread would swallow anything thrown
+                        failure.compareAndSet(null, e);
+                    }
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while bulk indexing");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+
+        return count.get();
+    }
+
+    @FunctionalInterface
+    public interface MovieSink {
+        void accept(Movie movie) throws IOException;
+    }
+}
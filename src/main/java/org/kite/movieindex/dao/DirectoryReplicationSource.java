@@ -0,0 +1,48 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.kite.movieindex.entity.ReplicationCommit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads commits straight from the index directories of a primary. Nothing protects a commit from being deleted by the
+ * primary while it's copied: the copy then fails on a missing file and is retried with the newer commit.
+ */
+public class DirectoryReplicationSource implements ReplicationSource {
+    private final Path indexPath;
+    private final int shardCount;
+
+    public DirectoryReplicationSource(Path indexPath, int shardCount) {
+        this.indexPath = indexPath;
+        this.shardCount = shardCount;
+    }
+
+    @Override
+    public ReplicationCommit getLatestCommit(int shard) throws IOException {
+        // Only the segments file is read, no need to map anything
+        try (Directory directory = new NIOFSDirectory(IndexShard.path(indexPath, shard, shardCount))) {
+            SegmentInfos infos = SegmentInfos.readLatestCommit(directory);
+            Map<String, Long> files = new LinkedHashMap<>();
+            for (String name : infos.files(true)) {
+                files.put(name, directory.fileLength(name));
+            }
+            return new ReplicationCommit(infos.getGeneration(), infos.getSegmentsFileName(), files);
+        } catch (IndexNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream openFile(int shard, String name) throws IOException {
+        return Files.newInputStream(IndexShard.path(indexPath, shard, shardCount).resolve(name));
+    }
+}
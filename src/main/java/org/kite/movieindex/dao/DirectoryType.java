@@ -0,0 +1,54 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.SimpleFSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Lucene {@link Directory} implementations the index can be stored in, selected by {@code main.index.directory}
+ */
+public enum DirectoryType {
+    /**
+     * Memory-mapped files, reads go through the OS page cache without locking. The default
+     */
+    MMAP {
+        @Override
+        public Directory open(Path path) throws IOException {
+            return new MMapDirectory(path);
+        }
+    },
+    /**
+     * Positional reads through a FileChannel, no synchronization between readers
+     */
+    NIO {
+        @Override
+        public Directory open(Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    },
+    /**
+     * Seek and read on a SeekableByteChannel from Files.newByteChannel, reads of the same file are serialized
+     */
+    SIMPLE {
+        @Override
+        public Directory open(Path path) throws IOException {
+            return new SimpleFSDirectory(path);
+        }
+    },
+    /**
+     * Keeps the whole index on heap and ignores the path. Meant for tests
+     */
+    RAM {
+        @Override
+        public Directory open(Path path) {
+            return new RAMDirectory();
+        }
+    };
+
+    public abstract Directory open(Path path) throws IOException;
+}
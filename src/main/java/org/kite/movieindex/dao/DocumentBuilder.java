@@ -4,7 +4,6 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FloatDocValuesField;
-import org.apache.lucene.document.FloatPoint;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
@@ -25,39 +24,74 @@ import java.time.ZoneId;
  * Created by Mikhail_Miroliubov on 8/2/2017.
  */
 public class DocumentBuilder {
+    private final boolean storeFields;
+    private final boolean indexPoints;
+
+    public DocumentBuilder() {
+        this(true);
+    }
+
+    public DocumentBuilder(boolean storeFields) {
+        this(storeFields, true);
+    }
+
+    /**
+     * @param storeFields whether to keep stored copies of the fields. Without them movies can only be read back from
+     *                    doc values, see {@link MovieBuilder#build(org.apache.lucene.index.LeafReader, int, java.util.Set)}
+     * @param indexPoints false for indexes sorted by main.index.sort, release date filters then use doc values
+     */
+    public DocumentBuilder(boolean storeFields, boolean indexPoints) {
+        this.storeFields = storeFields;
+        this.indexPoints = indexPoints;
+    }
+
     public Document build(Movie movie) {
         Document document = new Document();
+        Field.Store store = storeFields ? Field.Store.YES : Field.Store.NO;
 
-        document.add(new TextField(IndexField.NAME.getFieldName(), movie.getName(), Field.Store.YES));
+        if (movie.getId() != null) {
+            document.add(new StringField(IndexField.ID.getFieldName(), movie.getId(), store));
+            document.add(new SortedSetDocValuesField(IndexField.ID.getFieldName(), new BytesRef(movie.getId())));
+        }
+
+        document.add(new TextField(IndexField.NAME.getFieldName(), movie.getName(), store));
         document.add(new SortedSetDocValuesField(IndexField.NAME.getFieldName(), new BytesRef(movie.getName())));
 
-        document.add(new TextField(IndexField.DIRECTOR.getFieldName(), movie.getDirector(), Field.Store.YES));
+        document.add(new TextField(IndexField.DIRECTOR.getFieldName(), movie.getDirector(), store));
         document.add(new SortedSetDocValuesField(IndexField.DIRECTOR.getFieldName(), new BytesRef(movie.getDirector())));
         document.add(new SortedSetDocValuesFacetField(IndexField.DIRECTOR.getFieldName(), movie.getDirector()));
 
         for (String actor : movie.getCast()) {
-            document.add(new TextField(IndexField.CAST.getFieldName(), actor, Field.Store.YES));
+            document.add(new TextField(IndexField.CAST.getFieldName(), actor, store));
             document.add(new SortedSetDocValuesField(IndexField.CAST.getFieldName(), new BytesRef(actor)));
             document.add(new SortedSetDocValuesFacetField(IndexField.CAST.getFieldName(), actor));
         }
 
         LocalDate date = movie.getReleaseDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        document.add(new IntPoint(IndexField.YEAR.getFieldName(), date.getYear())); // we wanna have facets for release year
-        document.add(new StoredField(IndexField.YEAR.getFieldName(), date.getYear()));
+        if (indexPoints) { // Lucene 6.0's SortingMergePolicy can't wrap point values, so sorted indexes go without
+            document.add(new IntPoint(IndexField.YEAR.getFieldName(), date.getYear()));
+        }
+        if (storeFields) {
+            document.add(new StoredField(IndexField.YEAR.getFieldName(), date.getYear()));
+        }
         document.add(new NumericDocValuesField(IndexField.YEAR.getFieldName(), date.getYear()));
+        // we wanna have facets for release year
         document.add(new SortedSetDocValuesFacetField(IndexField.YEAR.getFieldName(), Integer.toString(date.getYear())));
 
-        document.add(new LongPoint(IndexField.RELEASE_DATE.getFieldName(), movie.getReleaseDate().getTime()));
-        document.add(new StoredField(IndexField.RELEASE_DATE.getFieldName(), movie.getReleaseDate().getTime()));
+        if (indexPoints) {
+            document.add(new LongPoint(IndexField.RELEASE_DATE.getFieldName(), movie.getReleaseDate().getTime()));
+        }
+        if (storeFields) {
+            document.add(new StoredField(IndexField.RELEASE_DATE.getFieldName(), movie.getReleaseDate().getTime()));
+        }
         document.add(new NumericDocValuesField(IndexField.RELEASE_DATE.getFieldName(), movie.getReleaseDate().getTime()));
 
-        document.add(new FloatPoint(IndexField.RATING.getFieldName(), movie.getRating()));
-        document.add(new StoredField(IndexField.RATING.getFieldName(), movie.getRating()));
+        // Only doc values, which MovieIndexer.updateRating can change in place, points or a stored copy would go stale
         document.add(new DoubleDocValuesField(IndexField.RATING.getFieldName(), movie.getRating()));
 
         for (Genre genre : movie.getGenres()) {
             String genreValue = genre.name().toLowerCase();
-            document.add(new StringField(IndexField.GENRE.getFieldName(), genreValue, Field.Store.YES));
+            document.add(new StringField(IndexField.GENRE.getFieldName(), genreValue, store));
             document.add(new SortedSetDocValuesField(IndexField.GENRE.getFieldName(), new BytesRef(genreValue)));
             document.add(new SortedSetDocValuesFacetField(IndexField.GENRE.getFieldName(), genreValue));
         }
@@ -0,0 +1,99 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Matches documents whose {@link org.apache.lucene.document.DoubleDocValuesField} value lies within an inclusive
+ * range. Points can't be changed without re-indexing the document, doc values can, so this query stays correct after
+ * {@link MovieIndexer#updateRating}. It checks every candidate document, which is cheap as a filter next to other
+ * clauses but a linear scan on its own.
+ * <p>
+ * Segments keep their core cache key across doc values updates, so the result of this query must not be put into
+ * the query cache, see {@link MovieQueryCachingPolicy}.
+ */
+public class DoubleDocValuesRangeQuery extends Query {
+    private final String field;
+    private final double lowerValue;
+    private final double upperValue;
+
+    public DoubleDocValuesRangeQuery(String field, double lowerValue, double upperValue) {
+        this.field = Objects.requireNonNull(field);
+        this.lowerValue = lowerValue;
+        this.upperValue = upperValue;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+        return new ConstantScoreWeight(this) {
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                LeafReader reader = context.reader();
+                NumericDocValues values = reader.getNumericDocValues(field);
+                if (values == null) {
+                    return null;
+                }
+
+                Bits docsWithField = DocValues.getDocsWithField(reader, field);
+                TwoPhaseIterator twoPhase = new TwoPhaseIterator(DocIdSetIterator.all(reader.maxDoc())) {
+                    @Override
+                    public boolean matches() throws IOException {
+                        int doc = approximation.docID();
+                        if (!docsWithField.get(doc)) {
+                            return false;
+                        }
+
+                        double value = Double.longBitsToDouble(values.get(doc));
+                        return value >= lowerValue && value <= upperValue;
+                    }
+
+                    @Override
+                    public float matchCost() {
+                        return 2; // one lookup for the value, one for whether it exists
+                    }
+                };
+
+                return new ConstantScoreScorer(this, score(), twoPhase);
+            }
+        };
+    }
+
+    @Override
+    public String toString(String defaultField) {
+        return (field.equals(defaultField) ? "" : field + ":") + "[" + lowerValue + " TO " + upperValue + "]";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+
+        DoubleDocValuesRangeQuery that = (DoubleDocValuesRangeQuery) o;
+        return field.equals(that.field) && Double.compare(lowerValue, that.lowerValue) == 0
+                && Double.compare(upperValue, that.upperValue) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), field, lowerValue, upperValue);
+    }
+}
@@ -0,0 +1,41 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ReferenceManager;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one {@link SortedSetDocValuesReaderState} per facet field for the current reader, so the ordinal map is
+ * built once per reader generation instead of on every groupBy. Registered as a refresh listener, the cache is
+ * dropped whenever the searcher is reopened.
+ */
+public class FacetStateCache implements ReferenceManager.RefreshListener {
+    private final Map<IndexField, SortedSetDocValuesReaderState> states = new ConcurrentHashMap<>();
+
+    public SortedSetDocValuesReaderState get(IndexReader reader, IndexField field) throws IOException {
+        SortedSetDocValuesReaderState state = states.get(field);
+        if (state == null || state.getOrigReader() != reader) { // a searcher acquired before the last refresh
+            state = new DefaultSortedSetDocValuesReaderState(reader, field.getFacetField());
+            states.put(field, state);
+        }
+
+        return state;
+    }
+
+    @Override
+    public void beforeRefresh() {
+        // no-op
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+        if (didRefresh) {
+            states.clear();
+        }
+    }
+}
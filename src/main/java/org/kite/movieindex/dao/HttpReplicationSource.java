@@ -0,0 +1,60 @@
+package org.kite.movieindex.dao;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.kite.movieindex.entity.ReplicationCommit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fetches commits from the /replication endpoints of a primary node. The primary keeps a served commit for
+ * main.index.replication.lease ms, long enough to copy its files.
+ */
+public class HttpReplicationSource implements ReplicationSource {
+    private static final int CONNECT_TIMEOUT = 5000; // ms
+    private static final int READ_TIMEOUT = 30000; // ms
+    private static final ObjectReader COMMIT_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(ReplicationCommit.class);
+
+    private final String baseUrl;
+
+    /**
+     * @param baseUrl of the primary, including the context path, e.g. http://primary:8080/movies
+     */
+    public HttpReplicationSource(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public ReplicationCommit getLatestCommit(int shard) throws IOException {
+        HttpURLConnection connection = open("/replication/" + shard);
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+            connection.disconnect();
+            return null;
+        }
+
+        try (InputStream in = connection.getInputStream()) {
+            return COMMIT_READER.readValue(in);
+        }
+    }
+
+    @Override
+    public InputStream openFile(int shard, String name) throws IOException {
+        return open("/replication/" + shard + "/files?name=" + URLEncoder.encode(name, StandardCharsets.UTF_8.name()))
+                .getInputStream(); // FileNotFoundException on 404
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
+}
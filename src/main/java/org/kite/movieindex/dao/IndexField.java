@@ -1,9 +1,11 @@
 package org.kite.movieindex.dao;
 
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedSetSortField;
 
 public enum IndexField
 {
+    ID("id", SortField.Type.STRING),
     NAME("name", SortField.Type.STRING),
     DIRECTOR("director", SortField.Type.STRING),
     CAST("cast", SortField.Type.STRING),
@@ -31,4 +33,9 @@ public enum IndexField
     public SortField.Type getType() {
         return type;
     }
+
+    public SortField getSortField(boolean desc) {
+        return type == SortField.Type.STRING ? new SortedSetSortField(fieldName, desc)
+                : new SortField(fieldName, type, desc);
+    }
 }
@@ -0,0 +1,126 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.kite.movieindex.entity.ReplicationCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies new commits of a primary into the directories of read-only shards. Lucene never rewrites an index file, so
+ * only the files a replica doesn't have yet are copied, usually the segments flushed or merged since the last copy.
+ * The segments file goes last: until it's in place, readers keep seeing the previous commit.
+ */
+public class IndexReplicator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexReplicator.class);
+    private static final String PENDING_PREFIX = "pending_"; // ignored by readers, like IndexWriter's own
+
+    private final ReplicationSource source;
+    private final List<IndexShard> shards;
+
+    public IndexReplicator(ReplicationSource source, List<IndexShard> shards) {
+        this.source = source;
+        this.shards = shards;
+    }
+
+    /**
+     * @return true if a new commit was copied for any of the shards, which readers can now be reopened on
+     */
+    public boolean replicate() throws IOException {
+        boolean changed = false;
+        for (int i = 0; i < shards.size(); i++) {
+            changed |= replicate(i, shards.get(i).getDirectory());
+        }
+        return changed;
+    }
+
+    private boolean replicate(int shard, Directory directory) throws IOException {
+        ReplicationCommit commit = source.getLatestCommit(shard);
+        String[] localFiles = directory.listAll();
+        if (commit == null || commit.getSegmentsFileName().equals(SegmentInfos.getLastCommitSegmentsFileName(
+                localFiles))) {
+            return false;
+        }
+
+        Set<String> local = new HashSet<>(Arrays.asList(localFiles));
+        List<String> copied = new ArrayList<>();
+        long bytes = 0;
+        for (Map.Entry<String, Long> file : commit.getFiles().entrySet()) {
+            String name = file.getKey();
+            if (name.equals(commit.getSegmentsFileName())) {
+                continue;
+            }
+            if (local.contains(name)) {
+                if (directory.fileLength(name) == file.getValue()) {
+                    continue;
+                }
+                directory.deleteFile(name); // left over by an interrupted copy
+            }
+
+            copy(shard, name, name, file.getValue(), directory);
+            copied.add(name);
+            bytes += file.getValue();
+        }
+        directory.sync(copied);
+
+        String pending = PENDING_PREFIX + commit.getSegmentsFileName();
+        if (local.contains(pending)) {
+            directory.deleteFile(pending);
+        }
+        copy(shard, commit.getSegmentsFileName(), pending, commit.getFiles().get(commit.getSegmentsFileName()),
+                directory);
+        directory.sync(Collections.singleton(pending));
+        directory.renameFile(pending, commit.getSegmentsFileName()); // atomic, and syncs the directory
+        LOGGER.info("Replicated {} of shard {}: {} new files, {} bytes", commit.getSegmentsFileName(), shard,
+                copied.size(), bytes);
+
+        deleteUnreferenced(directory, commit);
+        return true;
+    }
+
+    private void copy(int shard, String name, String target, long length, Directory directory) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long copied = 0;
+        try (InputStream in = source.openFile(shard, name);
+             IndexOutput out = directory.createOutput(target, IOContext.DEFAULT)) {
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.writeBytes(buffer, read);
+                copied += read;
+            }
+        }
+
+        if (copied != length) {
+            directory.deleteFile(target);
+            throw new IOException("Copied " + copied + " bytes of " + name + " instead of " + length);
+        }
+    }
+
+    /**
+     * Files of older commits are removed right away. On POSIX file systems, readers that still use them keep their
+     * open handles.
+     */
+    private static void deleteUnreferenced(Directory directory, ReplicationCommit commit) {
+        try {
+            for (String name : directory.listAll()) {
+                if (!commit.getFiles().containsKey(name) && !name.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                    directory.deleteFile(name);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete old index files, retrying after the next copy", e);
+        }
+    }
+}
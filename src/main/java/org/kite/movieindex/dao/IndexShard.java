@@ -0,0 +1,179 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.kite.movieindex.entity.ReplicationCommit;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One shard of the movie index, with its own directory and writer, so shards flush, merge and commit independently
+ * of each other and can be spread over disks. A replica shard has no writer: its directory is filled by an
+ * {@link IndexReplicator} and readers are opened from the last copied commit.
+ */
+public class IndexShard implements Closeable {
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SnapshotDeletionPolicy snapshots;
+    private final Map<IndexCommit, Long> leases = new LinkedHashMap<>(); // snapshot -> expiry in ms
+
+    public IndexShard(Directory directory, IndexWriterConfig config) throws IOException {
+        this.directory = directory;
+        snapshots = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+        try {
+            writer = new IndexWriter(directory, config.setIndexDeletionPolicy(snapshots));
+            if (!DirectoryReader.indexExists(directory)) {
+                writer.commit(); // so there's always a commit to replicate
+            }
+        } catch (IOException | RuntimeException e) {
+            directory.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read-only shard over a directory that replicated commits are copied to.
+     */
+    public IndexShard(Directory directory) {
+        this.directory = directory;
+        writer = null;
+        snapshots = null;
+    }
+
+    /**
+     * A single shard stays directly under the index path, so indexes from before sharding remain readable.
+     */
+    public static Path path(Path indexPath, int shard, int shardCount) {
+        return shardCount == 1 ? indexPath : indexPath.resolve("shard-" + shard);
+    }
+
+    public Directory getDirectory() {
+        return directory;
+    }
+
+    public IndexWriter getWriter() {
+        if (writer == null) {
+            throw new IllegalStateException("Replica shards are read-only, index on the primary");
+        }
+        return writer;
+    }
+
+    public boolean isReadOnly() {
+        return writer == null;
+    }
+
+    /**
+     * @return a near-real-time reader, that sees the changes of the writer that aren't committed yet, or a reader of
+     * the last commit for a replica shard
+     */
+    public DirectoryReader openReader() throws IOException {
+        return writer != null ? DirectoryReader.open(writer) : DirectoryReader.open(directory);
+    }
+
+    /**
+     * @return a reader with the latest changes, or null if there are none since the given reader was opened
+     */
+    public DirectoryReader reopen(DirectoryReader reader) throws IOException {
+        return writer != null ? DirectoryReader.openIfChanged(reader, writer) : DirectoryReader.openIfChanged(reader);
+    }
+
+    public Map<String, String> getCommitData() throws IOException {
+        return writer != null ? writer.getCommitData() : SegmentInfos.readLatestCommit(directory).getUserData();
+    }
+
+    public void commit() throws IOException {
+        if (getWriter().hasUncommittedChanges()) {
+            writer.commit();
+        }
+    }
+
+    /**
+     * Protects the last commit from deletion for leaseMillis, so a replica has time to copy its files.
+     */
+    public synchronized ReplicationCommit snapshot(long leaseMillis) throws IOException {
+        getWriter(); // replicas can't be replicated from
+        releaseExpired();
+        IndexCommit commit = snapshots.snapshot();
+        if (leases.containsKey(commit)) {
+            snapshots.release(commit); // already protected, only extend the lease
+        }
+        leases.put(commit, System.currentTimeMillis() + leaseMillis);
+
+        Map<String, Long> files = new LinkedHashMap<>();
+        for (String name : commit.getFileNames()) {
+            files.put(name, directory.fileLength(name));
+        }
+        return new ReplicationCommit(commit.getGeneration(), commit.getSegmentsFileName(), files);
+    }
+
+    /**
+     * Writes a file of a commit protected by {@link #snapshot(long)}.
+     */
+    public void copyFile(String name, OutputStream out) throws IOException {
+        if (!isLeased(name)) {
+            throw new FileNotFoundException(name); // only files of snapshots are sure to stay until the copy is done
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (IndexInput in = directory.openInput(name, IOContext.READONCE)) {
+            for (long left = in.length(); left > 0; ) {
+                int chunk = (int) Math.min(buffer.length, left);
+                in.readBytes(buffer, 0, chunk);
+                out.write(buffer, 0, chunk);
+                left -= chunk;
+            }
+        }
+    }
+
+    private synchronized boolean isLeased(String name) throws IOException {
+        for (IndexCommit commit : leases.keySet()) {
+            if (commit.getFileNames().contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void releaseExpired() throws IOException {
+        long now = System.currentTimeMillis();
+        boolean released = false;
+        for (Iterator<Map.Entry<IndexCommit, Long>> it = leases.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<IndexCommit, Long> lease = it.next();
+            if (lease.getValue() < now) {
+                snapshots.release(lease.getKey());
+                it.remove();
+                released = true;
+            }
+        }
+
+        if (released) {
+            writer.deleteUnusedFiles();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+        } finally {
+            directory.close();
+        }
+    }
+}
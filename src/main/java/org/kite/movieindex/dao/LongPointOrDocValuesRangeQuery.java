@@ -0,0 +1,103 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Matches documents whose long value lies within an inclusive range, through the points of a segment if it has any
+ * for the field and through its {@link org.apache.lucene.document.NumericDocValuesField} otherwise. Indexes sorted by
+ * main.index.sort are built without points, which the sorting merges of this Lucene version can't handle.
+ */
+public class LongPointOrDocValuesRangeQuery extends Query {
+    private final String field;
+    private final long lowerValue;
+    private final long upperValue;
+
+    public LongPointOrDocValuesRangeQuery(String field, long lowerValue, long upperValue) {
+        this.field = Objects.requireNonNull(field);
+        this.lowerValue = lowerValue;
+        this.upperValue = upperValue;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+        Weight pointWeight = LongPoint.newRangeQuery(field, lowerValue, upperValue).createWeight(searcher, false);
+        return new ConstantScoreWeight(this) {
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                LeafReader reader = context.reader();
+                FieldInfo info = reader.getFieldInfos().fieldInfo(field);
+                if (info == null) {
+                    return null;
+                }
+
+                if (info.getPointDimensionCount() > 0) {
+                    Scorer points = pointWeight.scorer(context);
+                    return points == null ? null : new ConstantScoreScorer(this, score(), points.iterator());
+                }
+
+                NumericDocValues values = reader.getNumericDocValues(field);
+                if (values == null) {
+                    return null;
+                }
+
+                Bits docsWithField = DocValues.getDocsWithField(reader, field);
+                TwoPhaseIterator twoPhase = new TwoPhaseIterator(DocIdSetIterator.all(reader.maxDoc())) {
+                    @Override
+                    public boolean matches() throws IOException {
+                        int doc = approximation.docID();
+                        if (!docsWithField.get(doc)) {
+                            return false;
+                        }
+
+                        long value = values.get(doc);
+                        return value >= lowerValue && value <= upperValue;
+                    }
+
+                    @Override
+                    public float matchCost() {
+                        return 2; // one lookup for the value, one for whether it exists
+                    }
+                };
+
+                return new ConstantScoreScorer(this, score(), twoPhase);
+            }
+        };
+    }
+
+    @Override
+    public String toString(String defaultField) {
+        return (field.equals(defaultField) ? "" : field + ":") + "[" + lowerValue + " TO " + upperValue + "]";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+
+        LongPointOrDocValuesRangeQuery that = (LongPointOrDocValuesRangeQuery) o;
+        return field.equals(that.field) && lowerValue == that.lowerValue && upperValue == that.upperValue;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), field, lowerValue, upperValue);
+    }
+}
@@ -0,0 +1,132 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.Bits;
+import org.kite.movieindex.entity.Group;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Facet counts over all live documents, for groupBys without a filter. Counts are kept per segment until the segment
+ * changes, so after a refresh only new segments and those that got deletes or rating updates are counted again, and
+ * the sum over all segments is kept for as long as the reader is used. Groups come in the same order as from the
+ * facet counts of a collected query: by count then label, and the rating ranges in order.
+ */
+public class MatchAllFacetCounts {
+    static final int RATING_RANGES = 11;
+
+    private final Map<Object, Map<IndexField, Map<String, Integer>>> segmentCounts = new WeakHashMap<>();
+    private final Map<Object, Map<IndexField, List<Group>>> readerCounts = new WeakHashMap<>();
+
+    public List<Group> get(IndexReader reader, IndexField field) throws IOException {
+        if (field == IndexField.RELEASE_DATE) {
+            field = IndexField.YEAR; // No one is going to group by actual date
+        }
+
+        Object readerKey = reader.getCombinedCoreAndDeletesKey();
+        List<Group> groups = cached(readerCounts, readerKey, field);
+        if (groups == null) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (LeafReaderContext leaf : reader.leaves()) {
+                Object key = leaf.reader().getCombinedCoreAndDeletesKey(); // changes with deletes and dv updates
+                Map<String, Integer> leafCounts = cached(segmentCounts, key, field);
+                if (leafCounts == null) {
+                    leafCounts = field == IndexField.RATING ? countRatings(leaf.reader())
+                            : countLabels(leaf.reader(), field);
+                    cache(segmentCounts, key, field, leafCounts);
+                }
+                leafCounts.forEach((label, count) -> counts.merge(label, count, Integer::sum));
+            }
+
+            groups = field == IndexField.RATING ? ratingGroups(counts) : labelGroups(counts);
+            cache(readerCounts, readerKey, field, groups);
+        }
+
+        // Groups are mutable, so don't hand out the cached ones
+        return groups.stream().map(g -> new Group(g.getName(), g.getValue())).collect(Collectors.toList());
+    }
+
+    private synchronized <T> T cached(Map<Object, Map<IndexField, T>> cache, Object key, IndexField field) {
+        return cache.getOrDefault(key, Collections.emptyMap()).get(field);
+    }
+
+    private synchronized <T> void cache(Map<Object, Map<IndexField, T>> cache, Object key, IndexField field, T value) {
+        cache.computeIfAbsent(key, k -> new EnumMap<>(IndexField.class)).put(field, value);
+    }
+
+    private static Map<String, Integer> countLabels(LeafReader reader, IndexField field) throws IOException {
+        Bits liveDocs = reader.getLiveDocs();
+        SortedSetDocValues values = DocValues.getSortedSet(reader, field.getFacetField());
+        int[] counts = new int[(int) values.getValueCount()];
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+                continue;
+            }
+
+            values.setDocument(doc);
+            for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                counts[(int) ord]++;
+            }
+        }
+
+        Map<String, Integer> labels = new HashMap<>();
+        for (int ord = 0; ord < counts.length; ord++) {
+            if (counts[ord] > 0) {
+                String[] path = FacetsConfig.stringToPath(values.lookupOrd(ord).utf8ToString()); // dimension, label
+                labels.put(path[1], counts[ord]);
+            }
+        }
+
+        return labels;
+    }
+
+    private static Map<String, Integer> countRatings(LeafReader reader) throws IOException {
+        Bits liveDocs = reader.getLiveDocs();
+        NumericDocValues ratings = DocValues.getNumeric(reader, IndexField.RATING.getFieldName());
+        Bits docsWithRating = DocValues.getDocsWithField(reader, IndexField.RATING.getFieldName());
+        Map<String, Integer> counts = new HashMap<>();
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            if ((liveDocs != null && !liveDocs.get(doc)) || !docsWithRating.get(doc)) {
+                continue;
+            }
+
+            double rating = Double.longBitsToDouble(ratings.get(doc));
+            if (rating >= 0 && rating < RATING_RANGES) { // ranges are [i, i + 1)
+                counts.merge(Integer.toString((int) rating), 1, Integer::sum);
+            }
+        }
+
+        return counts;
+    }
+
+    private static List<Group> ratingGroups(Map<String, Integer> counts) {
+        List<Group> groups = new ArrayList<>();
+        for (int i = 0; i < RATING_RANGES; i++) {
+            groups.add(new Group(Integer.toString(i), counts.getOrDefault(Integer.toString(i), 0)));
+        }
+        return groups;
+    }
+
+    private static List<Group> labelGroups(Map<String, Integer> counts) {
+        return counts.entrySet().stream()
+                .sorted(Comparator.comparing(Map.Entry<String, Integer>::getValue).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .map(e -> new Group(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+    }
+}
@@ -3,42 +3,156 @@ package org.kite.movieindex.dao;
 import static org.kite.movieindex.dao.IndexField.*;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.IndexSearcher;
 import org.kite.movieindex.entity.Genre;
 import org.kite.movieindex.entity.Movie;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Created by Mikhail_Miroliubov on 8/3/2017.
  */
 public class MovieBuilder {
-    public static Movie build(Document document) {
+    /**
+     * Loads only the requested stored fields of a document, the rest are skipped by the stored field visitor
+     * without being materialized. The rating is always read from doc values, as it can be updated in place.
+     *
+     * @param fields fields to load, null to load all of them
+     */
+    public static Movie build(IndexSearcher searcher, int docId, Set<IndexField> fields) throws IOException {
+        Movie movie;
+        if (fields == null) {
+            movie = build(searcher.doc(docId), null);
+        } else {
+            DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(fields.stream()
+                    .filter(f -> f != RATING).map(IndexField::getFieldName).collect(Collectors.toSet()));
+            searcher.doc(docId, visitor);
+            movie = build(visitor.getDocument(), fields);
+        }
+
+        if (fields == null || fields.contains(RATING)) {
+            List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+            setRating(movie, leaf.reader(), docId - leaf.docBase);
+        }
+
+        return movie;
+    }
+
+    /**
+     * Builds a movie from doc values only, without touching stored fields. Multi-valued fields come back sorted and
+     * de-duplicated, so the cast loses its original order.
+     *
+     * @param docId id of the document within the leaf
+     * @param fields fields to load, null to load all of them
+     */
+    public static Movie build(LeafReader reader, int docId, Set<IndexField> fields) throws IOException {
         Movie movie = new Movie();
 
-        movie.setName(document.get(NAME.getFieldName()));
-        movie.setDirector(document.get(DIRECTOR.getFieldName()));
-        movie.setCast(Arrays.asList(document.getValues(CAST.getFieldName())));
+        if (fields == null || fields.contains(ID)) {
+            List<String> values = getValues(reader, docId, ID);
+            movie.setId(values.isEmpty() ? null : values.get(0));
+        }
 
-        IndexableField field = document.getField(RATING.getFieldName());
-        if (field != null) {
-            movie.setRating(field.numericValue().floatValue());
+        if (fields == null || fields.contains(NAME)) {
+            List<String> values = getValues(reader, docId, NAME);
+            movie.setName(values.isEmpty() ? null : values.get(0));
+        }
+
+        if (fields == null || fields.contains(DIRECTOR)) {
+            List<String> values = getValues(reader, docId, DIRECTOR);
+            movie.setDirector(values.isEmpty() ? null : values.get(0));
         }
 
-        field = document.getField(RELEASE_DATE.getFieldName());
+        if (fields == null || fields.contains(CAST)) {
+            movie.setCast(getValues(reader, docId, CAST));
+        }
+
+        if (fields == null || fields.contains(RATING)) {
+            setRating(movie, reader, docId);
+        }
+
+        if ((fields == null || fields.contains(RELEASE_DATE))
+                && DocValues.getDocsWithField(reader, RELEASE_DATE.getFieldName()).get(docId)) {
+            movie.setReleaseDate(new Date(DocValues.getNumeric(reader, RELEASE_DATE.getFieldName()).get(docId)));
+        }
+
+        if (fields == null || fields.contains(GENRE)) {
+            movie.setGenres(getValues(reader, docId, GENRE).stream().map(g -> Genre.valueOf(g.toUpperCase()))
+                    .collect(Collectors.toList()));
+        }
+
+        return movie;
+    }
+
+    private static void setRating(Movie movie, LeafReader reader, int docId) throws IOException {
+        if (DocValues.getDocsWithField(reader, RATING.getFieldName()).get(docId)) {
+            long bits = DocValues.getNumeric(reader, RATING.getFieldName()).get(docId);
+            movie.setRating((float) Double.longBitsToDouble(bits));
+        }
+    }
+
+    private static List<String> getValues(LeafReader reader, int docId, IndexField field) throws IOException {
+        SortedSetDocValues docValues = DocValues.getSortedSet(reader, field.getFieldName());
+        docValues.setDocument(docId);
+
+        List<String> values = new ArrayList<>();
+        for (long ord = docValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = docValues.nextOrd()) {
+            values.add(docValues.lookupOrd(ord).utf8ToString());
+        }
+
+        return values;
+    }
+
+    /**
+     * The rating isn't stored, it has to be read from doc values with {@link #setRating}.
+     */
+    private static Movie build(Document document, Set<IndexField> fields) {
+        Movie movie = new Movie();
+
+        if (fields == null || fields.contains(ID)) {
+            movie.setId(document.get(ID.getFieldName()));
+        }
+
+        if (fields == null || fields.contains(NAME)) {
+            movie.setName(document.get(NAME.getFieldName()));
+        }
+
+        if (fields == null || fields.contains(DIRECTOR)) {
+            movie.setDirector(document.get(DIRECTOR.getFieldName()));
+        }
+
+        if (fields == null || fields.contains(CAST)) {
+            movie.setCast(Arrays.asList(document.getValues(CAST.getFieldName())));
+        }
+
+        IndexableField field = document.getField(RELEASE_DATE.getFieldName());
         if (field != null) {
             movie.setReleaseDate(new Date(field.numericValue().longValue()));
         }
 
-        List<Genre> genres = new ArrayList<>();
-        for (String genreValue : document.getValues(GENRE.getFieldName())) {
-            genres.add(Genre.valueOf(genreValue.toUpperCase()));
+        if (fields == null || fields.contains(GENRE)) {
+            List<Genre> genres = new ArrayList<>();
+            for (String genreValue : document.getValues(GENRE.getFieldName())) {
+                genres.add(Genre.valueOf(genreValue.toUpperCase()));
+            }
+
+            movie.setGenres(genres);
         }
 
-        movie.setGenres(genres);
         return movie;
     }
 }
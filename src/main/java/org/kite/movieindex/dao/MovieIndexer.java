@@ -1,6 +1,8 @@
 package org.kite.movieindex.dao;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.facet.FacetResult;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
@@ -9,77 +11,635 @@ import org.apache.lucene.facet.LabelAndValue;
 import org.apache.lucene.facet.range.DoubleRange;
 import org.apache.lucene.facet.range.DoubleRangeFacetCounts;
 import org.apache.lucene.facet.range.LongRangeFacetCounts;
-import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortingMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.EarlyTerminatingSortingCollector;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.util.IOUtils;
 import org.kite.movieindex.entity.Group;
 import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.ReplicationCommit;
 import org.kite.movieindex.entity.SearchResult;
+import org.kite.movieindex.entity.Suggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Repository
 public class MovieIndexer {
-    @Value("{$main.index.path}")
+    private static final Logger LOGGER = LoggerFactory.getLogger(MovieIndexer.class);
+
+    @Value("${main.index.path}")
     private String mainIndexPath;
 
+    @Value("${main.index.directory}")
+    private DirectoryType directoryType = DirectoryType.MMAP;
+
+    @Value("${main.index.shards}")
+    private int shardCount = 1; // movies are routed by id, so changing it needs a re-index
+
+    // Searches sorted the same way stop collecting merged segments after the page, then count their total hits with
+    // a second pass over the matches: cheaper than sorting all of them, but as costly as running the query again
+    @Value("${main.index.sort}")
+    private String indexSort = ""; // e.g. "RATING desc, RELEASE_DATE desc", merged segments are kept in that order
+
+    @Value("${main.index.replication.source}")
+    private String replicationSource = ""; // index path or URL of the primary to copy commits from, empty on it
+
+    @Value("${main.index.replication.interval}")
+    private long replicationInterval = 5000; // ms
+
+    @Value("${main.index.replication.lease}")
+    private long replicationLease = 60000; // ms a commit served to replicas is kept
+
+    @Value("${main.search.facet.threads}")
+    private int facetThreads = Runtime.getRuntime().availableProcessors();
+
+    @Value("${main.search.facet.precomputed}")
+    private boolean facetPrecomputed = true; // keep the counts of groupBys without a filter per segment
+
+    @Value("${main.search.threads}")
+    private int searchThreads = 0; // threads to search segments in parallel with, 0 to search on the caller
+
+    @Value("${main.search.queue}")
+    private int searchQueue = 100; // segment slices waiting for a search thread, beyond that the caller runs them
+
+    @Value("${main.search.parallel.minSegments}")
+    private int parallelMinSegments = 2;
+
+    @Value("${main.search.parallel.minDocs}")
+    private int parallelMinDocs = 100000;
+
+    @Value("${main.index.ramBufferMb}")
+    private double ramBufferMb = 64; // indexed docs are buffered up to that size before being flushed to a segment
+
+    @Value("${main.index.merge.maxMergeAtOnce}")
+    private int maxMergeAtOnce = 10;
+
+    @Value("${main.index.merge.segmentsPerTier}")
+    private double segmentsPerTier = 10;
+
+    @Value("${main.index.merge.maxMergedSegmentMb}")
+    private double maxMergedSegmentMb = 5 * 1024;
+
+    @Value("${main.index.merge.maxThreads}")
+    private int mergeMaxThreads = ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS; // -1 to detect from disks
+
+    @Value("${main.index.bulk.threads}")
+    private int bulkThreads = Runtime.getRuntime().availableProcessors();
+
+    @Value("${main.index.bulk.queue}")
+    private int bulkQueue = 1000; // movies waiting for a bulk indexing thread
+
+    @Value("${main.index.storeFields}")
+    private boolean storeFields = true; // false keeps doc values only, movies are then always read from them
+
+    @Value("${main.search.docValues}")
+    private boolean docValuesHydration = false; // read found movies from doc values instead of stored fields
+
+    @Value("${main.search.queryCache.maxQueries}")
+    private int queryCacheMaxQueries = 1000; // 0 to disable the filter cache
+
+    @Value("${main.search.queryCache.maxRamMb}")
+    private int queryCacheMaxRamMb = 64;
+
+    @Value("${main.search.queryCache.minIndexSize}")
+    private int queryCacheMinIndexSize = 10000; // segments with fewer docs are never cached
+
+    @Value("${main.search.queryCache.minSegmentRatio}")
+    private float queryCacheMinSegmentRatio = 0.03F; // nor those holding a smaller share of the index
+
+    @Value("${main.search.queryCache.history}")
+    private int queryCacheHistory = 256; // number of recent filters used to decide which ones are frequent
+
+    @Value("${main.suggest.enabled}")
+    private boolean suggestEnabled = true;
+
+    @Value("${main.suggest.infix}")
+    private boolean suggestInfix = false; // also suggest on the start of any word, e.g. "tara" for Quentin Tarantino
+
+    @Value("${main.suggest.fuzzy}")
+    private boolean suggestFuzzy = false; // tolerate one typo, lookups get a few times slower
+
+    @Value("${main.index.refresh.interval}")
+    private long refreshInterval = 1000; // ms between background reader refreshes
+
+    @Value("${main.index.commit.interval}")
+    private long commitInterval = 60000; // ms between background commits, 0 to disable
+
+    @Value("${main.index.commit.maxDocs}")
+    private int commitMaxDocs = 0; // commit once that many docs are pending, 0 to disable
+
     private File mainIndex;
+    private List<IndexShard> shards;
+    private Sort mergeSort; // null if segments aren't sorted
+    private IndexReplicator replicator; // only on replicas
+    private ReferenceManager<IndexSearcher> searcherManager;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService facetExecutor;
+    private ExecutorService searchExecutor;
+    private MovieSuggester suggester;
+
+    private DocumentBuilder documentBuilder;
+    private FacetsConfig facetsConfig;
+    private final AtomicInteger uncommittedDocs = new AtomicInteger();
+    private final AtomicReference<Map<String, String>> pendingCommitData = new AtomicReference<>();
+    private final FacetStateCache facetStateCache = new FacetStateCache();
+    private final MatchAllFacetCounts matchAllFacetCounts = new MatchAllFacetCounts();
+    private final AtomicLong generation = new AtomicLong();
+    private final SearchMetrics metrics = new SearchMetrics();
 
     @PostConstruct
-    public void init() {
+    public void init() throws IOException {
         mainIndex = new File(mainIndexPath);
+        mergeSort = parseSort(indexSort);
+        documentBuilder = new DocumentBuilder(storeFields, mergeSort == null); // sorting merges can't handle points
+        facetsConfig = documentBuilder.createFacetsConfig();
+        docValuesHydration |= !storeFields;
+
+        boolean replica = StringUtils.isNotBlank(replicationSource);
+        shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            Directory directory = directoryType.open(IndexShard.path(mainIndex.toPath(), i, shardCount));
+            shards.add(replica ? new IndexShard(directory) : new IndexShard(directory, createWriterConfig()));
+        }
+        if (replica) {
+            replicator = new IndexReplicator(ReplicationSource.of(replicationSource, shardCount), shards);
+            copyInitialCommit();
+        }
+
+        if (searchThreads > 0) {
+            searchExecutor = new ThreadPoolExecutor(searchThreads, searchThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(searchQueue), r -> {
+                        Thread thread = new Thread(r, "segment-searcher");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+        // Near-real-time: readers are opened from the writer, so new documents are visible without a commit
+        QueryCache queryCache = null;
+        if (queryCacheMaxQueries > 0) {
+            queryCache = new LRUQueryCache(queryCacheMaxQueries, queryCacheMaxRamMb * 1024L * 1024L);
+        }
+        QueryCachingPolicy queryCachingPolicy = new MovieQueryCachingPolicy(new UsageTrackingQueryCachingPolicy(
+                queryCacheMinIndexSize, queryCacheMinSegmentRatio, queryCacheHistory));
+
+        searcherManager = new ShardSearcherManager(shards, new MovieSearcherFactory(searchExecutor,
+                parallelMinSegments, parallelMinDocs, queryCache, queryCachingPolicy));
+        searcherManager.addListener(facetStateCache);
+        searcherManager.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+                // no-op
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                if (didRefresh) {
+                    generation.incrementAndGet();
+                }
+            }
+        });
+        if (suggestEnabled) {
+            suggester = new MovieSuggester(searcherManager, suggestInfix, suggestFuzzy);
+            searcherManager.addListener(suggester);
+            suggester.scheduleRebuild(); // for the movies already on disk
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (replicator != null) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    replicate();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to replicate from " + replicationSource, e); // keep serving the last copy
+                }
+            }, replicationInterval, replicationInterval, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    searcherManager.maybeRefresh();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to refresh the searcher, retrying on the next run", e); // throwing cancels it
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        }
+
+        facetExecutor = Executors.newFixedThreadPool(facetThreads, r -> {
+            Thread thread = new Thread(r, "facet-counter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (commitInterval > 0 && replicator == null) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    commit();
+                } catch (IOException e) {
+                    LOGGER.error("Scheduled commit failed, retrying on the next run", e); // throwing cancels it
+                }
+            }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A new replica can't serve anything before its first copy, a restarted one falls back to its last copy.
+     */
+    private void copyInitialCommit() throws IOException {
+        try {
+            replicator.replicate();
+        } catch (IOException e) {
+            for (IndexShard shard : shards) {
+                if (!DirectoryReader.indexExists(shard.getDirectory())) {
+                    IOUtils.closeWhileHandlingException(shards);
+                    throw e;
+                }
+            }
+            LOGGER.warn("Failed to replicate from " + replicationSource + ", serving the last copy", e);
+        }
+    }
+
+    /**
+     * @param sort comma separated fields, each followed by asc or desc
+     * @return null for a blank sort
+     */
+    private static Sort parseSort(String sort) {
+        if (StringUtils.isBlank(sort)) {
+            return null;
+        }
+
+        List<SortField> sortFields = new ArrayList<>();
+        for (String field : sort.split(",")) {
+            String[] parts = field.trim().split("\\s+");
+            boolean desc = parts.length > 1 && parts[1].equalsIgnoreCase("desc");
+            sortFields.add(IndexField.valueOf(parts[0].toUpperCase()).getSortField(desc));
+        }
+
+        return new Sort(sortFields.toArray(new SortField[sortFields.size()]));
+    }
+
+    private IndexWriterConfig createWriterConfig() {
+        MergePolicy mergePolicy = new TieredMergePolicy()
+                .setMaxMergeAtOnce(maxMergeAtOnce)
+                .setSegmentsPerTier(segmentsPerTier)
+                .setMaxMergedSegmentMB(maxMergedSegmentMb);
+        if (mergeSort != null) {
+            // Only merged segments get sorted, freshly flushed ones stay in indexing order
+            mergePolicy = new SortingMergePolicy(mergePolicy, mergeSort);
+        }
+        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+        if (mergeMaxThreads != ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS) {
+            mergeScheduler.setMaxMergesAndThreads(mergeMaxThreads + 5, mergeMaxThreads); // allow merges to queue up
+        }
+
+        return new IndexWriterConfig(new StandardAnalyzer())
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                .setRAMBufferSizeMB(ramBufferMb / shardCount) // the shards share the configured buffer
+                .setMergePolicy(mergePolicy)
+                .setMergeScheduler(mergeScheduler);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        facetExecutor.shutdownNow();
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+        }
+        if (suggester != null) {
+            suggester.close();
+        }
+
+        try {
+            searcherManager.close();
+            if (replicator == null) {
+                commit();
+            }
+        } finally {
+            IOUtils.close(shards);
+        }
+    }
+
+    /**
+     * @return a number that changes every time searches start to see a new version of the index
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isReplica() {
+        return replicator != null;
+    }
+
+    /**
+     * Copies the latest commit of the primary if it's new, and makes it visible to searches.
+     *
+     * @return whether there was a new commit
+     */
+    public boolean replicate() throws IOException {
+        if (!replicator.replicate()) {
+            return false;
+        }
+
+        searcherManager.maybeRefreshBlocking();
+        return true;
+    }
+
+    /**
+     * @return the last commit of the shard, kept for main.index.replication.lease ms so a replica can copy it
+     */
+    public ReplicationCommit getReplicationCommit(int shard) throws IOException {
+        return shards.get(shard).snapshot(replicationLease);
+    }
+
+    public void copyReplicationFile(int shard, String name, OutputStream out) throws IOException {
+        shards.get(shard).copyFile(name, out);
     }
 
     public void index(List<Movie> movies) throws IOException {
-        try (
-                StandardAnalyzer analyzer = new StandardAnalyzer();
-                Directory index = new SimpleFSDirectory(mainIndex.toPath());
-                IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(analyzer).setOpenMode(
-                        IndexWriterConfig.OpenMode.CREATE_OR_APPEND))
-        ) {
-            DocumentBuilder builder = new DocumentBuilder();
-            FacetsConfig facetsConfig = builder.createFacetsConfig();
-            for (Movie movie : movies) {
-                writer.addDocument(facetsConfig.build(builder.build(movie)));
+        requirePrimary();
+        long start = System.nanoTime();
+        for (Movie movie : movies) {
+            addMovie(movie);
+        }
+
+        onChanged(movies.size());
+        metrics.recordIndexed(movies.size(), start);
+    }
+
+    /**
+     * Indexes a stream of movies, e.g. for a full re-index, building the documents on main.index.bulk.threads
+     * threads that add them to the writer concurrently. Everything is committed at the end.
+     *
+     * @return number of indexed movies
+     */
+    public long bulkIndex(Iterator<Movie> movies) throws IOException {
+        requirePrimary();
+        long start = System.nanoTime();
+        long count = new BulkIndexer(bulkThreads, bulkQueue).index(movies, this::addMovie);
+
+        commit();
+        searcherManager.maybeRefreshBlocking();
+        metrics.recordIndexed((int) count, start);
+        return count;
+    }
+
+    /**
+     * Adds or replaces a single movie, that is visible to searches once the method returns
+     */
+    public void update(Movie movie) throws IOException {
+        if (movie.getId() == null) {
+            throw new IllegalArgumentException("Can't update a movie without id");
+        }
+
+        index(Collections.singletonList(movie));
+    }
+
+    /**
+     * Changes the rating of a movie in place, through a doc values update, without re-indexing the rest of the
+     * document. Does nothing if there's no movie with the given id. The new rating shows up with the next background
+     * refresh: every reopen after an update rewrites the rating doc values of the segment, so refreshing per update
+     * would be expensive. Use {@link #updateRatings(Map)} to make a batch of updates visible right away.
+     * On an index sorted by rating the movie is re-indexed from its stored fields, so it fails without them.
+     */
+    public void updateRating(String id, float rating) throws IOException {
+        requirePrimary();
+        applyRating(id, rating);
+        applyCommitPolicy(1);
+    }
+
+    /**
+     * Updates several ratings like {@link #updateRating}, then refreshes once so they are visible to the next search.
+     */
+    public void updateRatings(Map<String, Float> ratings) throws IOException {
+        requirePrimary();
+        for (Map.Entry<String, Float> rating : ratings.entrySet()) {
+            applyRating(rating.getKey(), rating.getValue());
+        }
+
+        onChanged(ratings.size());
+    }
+
+    private void applyRating(String id, float rating) throws IOException {
+        if (isSortedBy(IndexField.RATING)) {
+            // An in-place update would leave the sorted segment out of order, so the movie is re-indexed instead
+            if (!storeFields) {
+                throw new IllegalStateException("Ratings of an index sorted by rating can only be updated with "
+                        + "main.index.storeFields on, as doc values don't keep the movie as it was indexed");
+            }
+            Movie movie = findMovie(id);
+            if (movie == null) {
+                return;
             }
+            movie.setRating(rating);
+            addMovie(movie);
+        } else {
+            shardFor(id).getWriter().updateNumericDocValue(new Term(IndexField.ID.getFieldName(), id),
+                    IndexField.RATING.getFieldName(), Double.doubleToRawLongBits(rating));
+        }
+
+        metrics.recordRatingUpdate();
+    }
+
+    public void delete(Collection<String> ids) throws IOException {
+        requirePrimary();
+        for (String id : ids) {
+            shardFor(id).getWriter().deleteDocuments(new Term(IndexField.ID.getFieldName(), id));
+        }
+
+        onChanged(ids.size());
+        metrics.recordDeleted(ids.size());
+    }
+
+    /**
+     * Applies the commit policy to the changed docs and makes them visible to the next search
+     */
+    private void onChanged(int changedDocs) throws IOException {
+        applyCommitPolicy(changedDocs);
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    private void applyCommitPolicy(int changedDocs) throws IOException {
+        int pending = uncommittedDocs.addAndGet(changedDocs);
+        if (commitMaxDocs > 0 && pending >= commitMaxDocs) {
+            commit();
+        }
+    }
+
+    private void addMovie(Movie movie) throws IOException {
+        Document document = facetsConfig.build(documentBuilder.build(movie));
+        if (movie.getId() != null) {
+            IndexWriter writer = shardFor(movie.getId()).getWriter();
+            writer.updateDocument(new Term(IndexField.ID.getFieldName(), movie.getId()), document); // upsert
+        } else {
+            shardFor(movie.getName()).getWriter().addDocument(document);
         }
     }
 
+    private boolean isSortedBy(IndexField field) {
+        return mergeSort != null && Arrays.stream(mergeSort.getSort())
+                .anyMatch(f -> f.getField().equals(field.getFieldName()));
+    }
+
+    private Movie findMovie(String id) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs docs = searcher.search(new TermQuery(new Term(IndexField.ID.getFieldName(), id)), 1);
+            // Always from stored fields: doc values sort the cast and drop duplicates, which re-indexing would keep
+            return docs.scoreDocs.length == 0 ? null : MovieBuilder.build(searcher, docs.scoreDocs[0].doc, null);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void requirePrimary() {
+        if (replicator != null) {
+            throw new IllegalStateException("Replicas are read-only, index on the primary");
+        }
+    }
+
+    /**
+     * Routes by a hash of the movie's key. String.hashCode is specified, so the routing survives restarts.
+     */
+    private IndexShard shardFor(String key) {
+        return shards.get(Math.floorMod(key.hashCode(), shards.size()));
+    }
+
+    /**
+     * @return user data of the last commit, or the data set to be written with the next one
+     */
+    public Map<String, String> getCommitData() throws IOException {
+        Map<String, String> pending = pendingCommitData.get();
+        return pending != null ? pending : shards.get(0).getCommitData();
+    }
+
+    /**
+     * Sets user data, like the position of applied changes in an external source, to be stored atomically with the
+     * next commit
+     */
+    public void setCommitData(Map<String, String> commitData) {
+        requirePrimary();
+        pendingCommitData.set(commitData);
+    }
+
+    /**
+     * Makes all pending changes durable. Called by the commit policy, but can be triggered explicitly too.
+     */
+    public synchronized void commit() throws IOException {
+        requirePrimary();
+        int committing = uncommittedDocs.get(); // changes made while committing count for the next commit
+
+        // Commit data is kept by the first shard, committed last: once it is durable, the changes it accounts for
+        // are durable in all shards
+        Map<String, String> commitData = pendingCommitData.get();
+        for (int i = shards.size() - 1; i > 0; i--) {
+            shards.get(i).commit();
+        }
+
+        if (commitData != null) {
+            shards.get(0).getWriter().setCommitData(commitData);
+            pendingCommitData.compareAndSet(commitData, null);
+        }
+        shards.get(0).commit();
+        uncommittedDocs.addAndGet(-committing); // only once durable, a failed commit is retried by the next change
+    }
+
     public SearchResult<Movie> search(Query query, Sort sort, int page, int pageSize) throws IOException {
-        try (
-                SimpleFSDirectory index = new SimpleFSDirectory(mainIndex.toPath());
-                IndexReader reader = DirectoryReader.open(index)
-        ) {
+        return search(query, sort, page, pageSize, null);
+    }
+
+    /**
+     * @param fields fields of the movies to load, null to load all of them
+     */
+    public SearchResult<Movie> search(Query query, Sort sort, int page, int pageSize, Set<IndexField> fields)
+            throws IOException {
+        long start = System.nanoTime();
+        IndexSearcher searcher = searcherManager.acquire();
+        metrics.record(SearchMetrics.Stage.ACQUIRE, start);
+        try {
+            IndexReader reader = searcher.getIndexReader();
             if (reader.numDocs() == 0) {
                 return new SearchResult<>(Collections.emptyList(), 0, 0);
             }
 
-            IndexSearcher searcher = new IndexSearcher(reader);
+            start = System.nanoTime();
             TopDocs docs;
             int numDocs = page * pageSize;
             if (sort == null) {
                 docs = searcher.search(query, numDocs);
+            } else if (mergeSort != null && EarlyTerminatingSortingCollector.canEarlyTerminate(sort, mergeSort)) {
+                docs = searchSorted(searcher, query, sort, numDocs);
             } else {
                 docs = searcher.search(query, numDocs, sort);
             }
+            metrics.record(SearchMetrics.Stage.COLLECT, start);
 
             int totalHits = docs.totalHits;
             int pagesCount = (int) Math.ceil(totalHits / (double) pageSize);
@@ -93,59 +653,263 @@ public class MovieIndexer {
                 return new SearchResult<>(Collections.emptyList(), pagesCount, totalHits);
             }
 
-            List<Movie> movies = new ArrayList<>();
-            for (int i = from; i < to; i++) {
-                Movie movie = MovieBuilder.build(searcher.doc(hits[i].doc));
-                movies.add(movie);
+            return new SearchResult<>(loadMovies(searcher, hits, from, to, fields), pagesCount, totalHits,
+                    nextCursor(hits, from, to, pageSize));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Like {@link IndexSearcher#search(Query, int, Sort)}, but stops collecting a segment sorted by main.index.sort
+     * after its first numHits matches, as no later match can make it to the top. The total is then counted apart,
+     * which is still cheaper than sorting all matches.
+     */
+    private TopDocs searchSorted(IndexSearcher searcher, Query query, Sort sort, int numHits) throws IOException {
+        return searcher.search(query, new CollectorManager<EarlyTerminatingCollector, TopDocs>() {
+            @Override
+            public EarlyTerminatingCollector newCollector() throws IOException {
+                return new EarlyTerminatingCollector(TopFieldCollector.create(sort, numHits, true, false, false),
+                        sort, numHits, mergeSort);
+            }
+
+            @Override
+            public TopDocs reduce(Collection<EarlyTerminatingCollector> collectors) throws IOException {
+                TopFieldDocs[] topDocs = new TopFieldDocs[collectors.size()];
+                boolean terminatedEarly = false;
+                int i = 0;
+                for (EarlyTerminatingCollector collector : collectors) {
+                    topDocs[i++] = collector.topDocs();
+                    terminatedEarly |= collector.terminatedEarly();
+                }
+
+                TopDocs merged = TopDocs.merge(sort, numHits, topDocs);
+                if (terminatedEarly) {
+                    metrics.recordEarlyTermination();
+                    merged.totalHits = searcher.count(query);
+                }
+                return merged;
             }
+        });
+    }
+
+    /**
+     * Cursor based paging: returns the page that follows the hit encoded in {@code cursor}, or the first page if it is
+     * null. Unlike page numbers, only {@code pageSize} hits are collected however deep the page is.
+     * The same sort must be used for all pages of a cursor.
+     */
+    public SearchResult<Movie> search(Query query, Sort sort, String cursor, int pageSize) throws IOException {
+        return search(query, sort, cursor, pageSize, null);
+    }
 
-            return new SearchResult<>(movies, pagesCount, totalHits);
+    /**
+     * Unlike page based searches, these can't stop early on sorted segments: the hits before the cursor would take up
+     * the matches allowed per segment.
+     *
+     * @param fields fields of the movies to load, null to load all of them
+     */
+    public SearchResult<Movie> search(Query query, Sort sort, String cursor, int pageSize, Set<IndexField> fields)
+            throws IOException {
+        long start = System.nanoTime();
+        IndexSearcher searcher = searcherManager.acquire();
+        metrics.record(SearchMetrics.Stage.ACQUIRE, start);
+        try {
+            IndexReader reader = searcher.getIndexReader();
+            if (reader.numDocs() == 0) {
+                return new SearchResult<>(Collections.emptyList(), 0, 0);
+            }
+
+            ScoreDoc after = cursor == null ? null : checkCursor(SearchCursor.decode(cursor), sort);
+            start = System.nanoTime();
+            TopDocs docs;
+            if (sort == null) {
+                docs = searcher.searchAfter(after, query, pageSize);
+            } else {
+                docs = searcher.searchAfter(after, query, pageSize, sort);
+            }
+            metrics.record(SearchMetrics.Stage.COLLECT, start);
+
+            int totalHits = docs.totalHits;
+            int pagesCount = (int) Math.ceil(totalHits / (double) pageSize);
+
+            final ScoreDoc[] hits = docs.scoreDocs;
+            return new SearchResult<>(loadMovies(searcher, hits, 0, hits.length, fields), pagesCount, totalHits,
+                    nextCursor(hits, 0, hits.length, pageSize));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * A cursor comes from the client, so its values have to fit the sort before searchAfter casts them.
+     */
+    private static ScoreDoc checkCursor(ScoreDoc after, Sort sort) throws IOException {
+        if (sort == null) {
+            return after;
+        }
+
+        SortField[] sortFields = sort.getSort();
+        if (!(after instanceof FieldDoc) || ((FieldDoc) after).fields.length != sortFields.length) {
+            throw new IllegalArgumentException("Search cursor doesn't match the sort " + sort);
+        }
+
+        Object[] values = ((FieldDoc) after).fields;
+        for (int i = 0; i < sortFields.length; i++) {
+            try {
+                @SuppressWarnings("unchecked")
+                FieldComparator<Object> comparator = (FieldComparator<Object>) sortFields[i].getComparator(1, i);
+                comparator.setTopValue(values[i]);
+            } catch (ClassCastException | NullPointerException e) { // null for a numeric sort fails on unboxing
+                throw new IllegalArgumentException("Search cursor doesn't match the sort " + sort, e);
+            }
+        }
+
+        return after;
+    }
+
+    private List<Movie> loadMovies(IndexSearcher searcher, ScoreDoc[] hits, int from, int to, Set<IndexField> fields)
+            throws IOException {
+        long start = System.nanoTime();
+        List<Movie> movies = new ArrayList<>();
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        for (int i = from; i < to; i++) {
+            Movie movie;
+            if (docValuesHydration) {
+                LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hits[i].doc, leaves));
+                movie = MovieBuilder.build(leaf.reader(), hits[i].doc - leaf.docBase, fields);
+            } else {
+                movie = MovieBuilder.build(searcher, hits[i].doc, fields);
+            }
+
+            movies.add(movie);
         }
+
+        metrics.record(SearchMetrics.Stage.LOAD, start);
+        return movies;
+    }
+
+    private String nextCursor(ScoreDoc[] hits, int from, int to, int pageSize) {
+        return to - from < pageSize ? null : SearchCursor.encode(hits[to - 1]); // a short page is the last one
+    }
+
+    /**
+     * Autocompletes movie names, directors and cast members, from an in-memory suggester that lags a little behind
+     * the searcher, as it is rebuilt in the background after each refresh.
+     */
+    public List<Suggestion> suggest(String text, int count) throws IOException {
+        return suggester == null ? Collections.emptyList() : suggester.suggest(text, count);
     }
 
     public List<Group> groupBy(Query query, IndexField groupBy) throws IOException {
-        try (
-                SimpleFSDirectory index = new SimpleFSDirectory(mainIndex.toPath());
-                IndexReader reader = DirectoryReader.open(index)
-        ) {
-            List<Group> res = new ArrayList<>();
+        return groupBy(query, EnumSet.of(groupBy)).get(groupBy);
+    }
+
+    /**
+     * Computes groupings for several fields at once. The query is run a single time and the facets of every field
+     * are counted in parallel from the same hits. Without a filter nothing is collected: the counts over all movies
+     * are kept per segment and only new or changed segments are counted.
+     */
+    public Map<IndexField, List<Group>> groupBy(Query query, Set<IndexField> groupBy) throws IOException {
+        long start = System.nanoTime();
+        IndexSearcher searcher = searcherManager.acquire();
+        metrics.record(SearchMetrics.Stage.ACQUIRE, start);
+        try {
+            IndexReader reader = searcher.getIndexReader();
+            Map<IndexField, List<Group>> res = new EnumMap<>(IndexField.class);
 
             if (reader.numDocs() == 0) {
+                groupBy.forEach(f -> res.put(f, new ArrayList<>()));
                 return res;
             }
 
-            IndexSearcher searcher = new IndexSearcher(reader);
+            if (facetPrecomputed && query instanceof MatchAllDocsQuery) {
+                start = System.nanoTime();
+                for (IndexField field : groupBy) {
+                    res.put(field, matchAllFacetCounts.get(reader, field));
+                }
+                metrics.record(SearchMetrics.Stage.FACET, start);
+                return res;
+            }
 
+            start = System.nanoTime();
             FacetsCollector collector = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, collector);
+            searcher.search(query, collector);
+            metrics.record(SearchMetrics.Stage.COLLECT, start);
 
-            Facets facets;
-            if (groupBy == IndexField.RELEASE_DATE) {
-                groupBy = IndexField.YEAR; // No one is going to group by actual date
+            start = System.nanoTime();
+            if (groupBy.size() == 1) {
+                IndexField field = groupBy.iterator().next();
+                res.put(field, countGroups(reader, collector, field));
+                metrics.record(SearchMetrics.Stage.FACET, start);
+                return res;
             }
 
-            switch (groupBy) {
-                case RATING:
-                    DoubleRange[] ranges = new DoubleRange[11];
-                    for (int i = 0; i < 11; i++) {
-                        ranges[i] = new DoubleRange(Integer.toString(i), i, true, i + 1, false);
-                    }
-
-                    facets = new DoubleRangeFacetCounts(groupBy.getFieldName(), collector, ranges);
-                    break;
-                default:
-                    SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(reader,
-                            groupBy.getFacetField());
-                    facets = new SortedSetDocValuesFacetCounts(state, collector);
+            Map<IndexField, Future<List<Group>>> futures = new EnumMap<>(IndexField.class);
+            for (IndexField field : groupBy) {
+                futures.put(field, facetExecutor.submit(() -> countGroups(reader, collector, field)));
             }
 
-            FacetResult result = facets.getTopChildren(reader.numDocs(), groupBy.getFieldName());
-            for (int i = 0; i < result.childCount; i++) {
-                LabelAndValue lv = result.labelValues[i];
-                res.add(new Group(lv.label, lv.value.intValue()));
+            try {
+                for (Map.Entry<IndexField, Future<List<Group>>> entry : futures.entrySet()) {
+                    res.put(entry.getKey(), entry.getValue().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while counting facets");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                futures.values().forEach(f -> f.cancel(false)); // an interrupt would close shared NIO channels
             }
 
+            metrics.record(SearchMetrics.Stage.FACET, start);
             return res;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private List<Group> countGroups(IndexReader reader, FacetsCollector collector, IndexField groupBy)
+            throws IOException {
+        Facets facets;
+        if (groupBy == IndexField.RELEASE_DATE) {
+            groupBy = IndexField.YEAR; // No one is going to group by actual date
+        }
+
+        switch (groupBy) {
+            case RATING:
+                DoubleRange[] ranges = new DoubleRange[MatchAllFacetCounts.RATING_RANGES];
+                for (int i = 0; i < ranges.length; i++) {
+                    ranges[i] = new DoubleRange(Integer.toString(i), i, true, i + 1, false);
+                }
+
+                facets = new DoubleRangeFacetCounts(groupBy.getFieldName(), collector, ranges);
+                break;
+            default:
+                SortedSetDocValuesReaderState state = facetStateCache.get(reader, groupBy);
+                facets = new SortedSetDocValuesFacetCounts(state, collector);
+        }
+
+        List<Group> res = new ArrayList<>();
+        FacetResult result = facets.getTopChildren(reader.numDocs(), groupBy.getFieldName());
+        for (int i = 0; i < result.labelValues.length; i++) { // childCount is all labels, not just the returned ones
+            LabelAndValue lv = result.labelValues[i];
+            res.add(new Group(lv.label, lv.value.intValue()));
+        }
+
+        return res;
+    }
+
+    private static class EarlyTerminatingCollector extends EarlyTerminatingSortingCollector {
+        EarlyTerminatingCollector(TopFieldCollector in, Sort sort, int numDocsToCollect, Sort mergePolicySort) {
+            super(in, sort, numDocsToCollect, mergePolicySort);
+        }
+
+        TopFieldDocs topDocs() {
+            return ((TopFieldCollector) in).topDocs();
         }
     }
 }
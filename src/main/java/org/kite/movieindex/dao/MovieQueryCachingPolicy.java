@@ -0,0 +1,52 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+
+import java.io.IOException;
+
+/**
+ * Keeps queries that read updatable doc values out of the query cache and leaves the decision for all other queries
+ * to the delegate. The cache keys its entries by segment core, which doesn't change when the doc values of a segment
+ * are updated, so a cached rating filter would keep matching the old ratings.
+ */
+public class MovieQueryCachingPolicy implements QueryCachingPolicy {
+    private final QueryCachingPolicy delegate;
+
+    public MovieQueryCachingPolicy(QueryCachingPolicy delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onUse(Query query) {
+        delegate.onUse(query);
+    }
+
+    @Override
+    public boolean shouldCache(Query query, LeafReaderContext context) throws IOException {
+        return !readsUpdatableDocValues(query) && delegate.shouldCache(query, context);
+    }
+
+    static boolean readsUpdatableDocValues(Query query) {
+        if (query instanceof DoubleDocValuesRangeQuery) {
+            return true;
+        } else if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : (BooleanQuery) query) {
+                if (readsUpdatableDocValues(clause.getQuery())) {
+                    return true;
+                }
+            }
+        } else if (query instanceof ConstantScoreQuery) {
+            return readsUpdatableDocValues(((ConstantScoreQuery) query).getQuery());
+        } else if (query instanceof BoostQuery) {
+            return readsUpdatableDocValues(((BoostQuery) query).getQuery());
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,52 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.SearcherFactory;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates searchers that search the segments of a reader in parallel on the given executor, once the reader is big
+ * enough for that to pay off. Smaller readers get a plain single-threaded searcher. All searchers share the same
+ * query cache, that keeps per-segment doc id sets of frequently used filter clauses.
+ */
+public class MovieSearcherFactory extends SearcherFactory {
+    private final ExecutorService executor;
+    private final int minSegments;
+    private final int minDocs;
+    private final QueryCache queryCache;
+    private final QueryCachingPolicy queryCachingPolicy;
+
+    /**
+     * @param executor pool to run segment slices on, null to always search on the calling thread
+     * @param minSegments least number of segments a reader should have to be searched in parallel
+     * @param minDocs least number of documents a reader should have to be searched in parallel
+     * @param queryCache cache for filter clauses, null to disable caching
+     * @param queryCachingPolicy decides which clauses are worth caching
+     */
+    public MovieSearcherFactory(ExecutorService executor, int minSegments, int minDocs, QueryCache queryCache,
+                                QueryCachingPolicy queryCachingPolicy) {
+        this.executor = executor;
+        this.minSegments = minSegments;
+        this.minDocs = minDocs;
+        this.queryCache = queryCache;
+        this.queryCachingPolicy = queryCachingPolicy;
+    }
+
+    @Override
+    public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+        IndexSearcher searcher;
+        if (executor != null && reader.leaves().size() >= minSegments && reader.maxDoc() >= minDocs) {
+            searcher = new IndexSearcher(reader, executor);
+        } else {
+            searcher = new IndexSearcher(reader);
+        }
+
+        searcher.setQueryCache(queryCache);
+        searcher.setQueryCachingPolicy(queryCachingPolicy);
+        return searcher;
+    }
+}
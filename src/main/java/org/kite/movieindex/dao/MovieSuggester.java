@@ -0,0 +1,277 @@
+package org.kite.movieindex.dao;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingSuggester;
+import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.kite.movieindex.entity.Suggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory FST suggester over movie names, directors and cast members, weighted by the best rating of the movies
+ * they appear in. Registered as a refresh listener, it is rebuilt in the background after every refresh while lookups
+ * keep using the previous FST until the new one is swapped in. Terms are collected per segment and kept until the
+ * segment changes, so a rebuild only scans the segments that are new or got deletes or rating updates since.
+ */
+public class MovieSuggester implements ReferenceManager.RefreshListener, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MovieSuggester.class);
+    private static final IndexField[] FIELDS = {IndexField.NAME, IndexField.DIRECTOR, IndexField.CAST};
+    private static final int MAX_COUNT = 100; // counts come from clients, and the lookup sizes its queue by them
+
+    private final ReferenceManager<IndexSearcher> searcherManager;
+    private final boolean infix;
+    private final boolean fuzzy;
+    private final Analyzer analyzer = new StandardAnalyzer(CharArraySet.EMPTY_SET); // "the" must be suggestible
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "suggester-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final Map<Object, Map<IndexField, Map<String, Float>>> segmentTerms = new WeakHashMap<>();
+    private volatile Lookup lookup;
+
+    /**
+     * @param infix also match the start of any word of a suggestion, not only its beginning
+     * @param fuzzy tolerate one typo in the typed text
+     */
+    public MovieSuggester(ReferenceManager<IndexSearcher> searcherManager, boolean infix, boolean fuzzy) {
+        this.searcherManager = searcherManager;
+        this.infix = infix;
+        this.fuzzy = fuzzy;
+    }
+
+    /**
+     * @return at most count suggestions for the typed text, best rated first, and never more than 100
+     */
+    public List<Suggestion> suggest(String text, int count) throws IOException {
+        Lookup current = lookup;
+        if (current == null || StringUtils.isBlank(text) || count <= 0) {
+            return Collections.emptyList();
+        }
+        count = Math.min(count, MAX_COUNT);
+
+        // With infix entries several words of the same suggestion can match, so ask for some more
+        Map<String, Suggestion> suggestions = new LinkedHashMap<>();
+        for (Lookup.LookupResult result : current.lookup(text, false, infix ? count * 2 : count)) {
+            BytesRef payload = result.payload;
+            IndexField field = FIELDS[payload.bytes[payload.offset]];
+            String label = new String(payload.bytes, payload.offset + 1, payload.length - 1, StandardCharsets.UTF_8);
+            suggestions.putIfAbsent(field + ":" + label, new Suggestion(label, field, result.value / 100F));
+            if (suggestions.size() == count) {
+                break;
+            }
+        }
+
+        return new ArrayList<>(suggestions.values());
+    }
+
+    /**
+     * Schedules a rebuild, unless one is already waiting to start.
+     */
+    public void scheduleRebuild() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                rebuildPending.set(false); // refreshes from now on need another rebuild
+                try {
+                    rebuild();
+                } catch (IOException e) {
+                    LOGGER.error("Failed to rebuild suggestions", e); // keep the previous ones until next refresh
+                }
+            });
+        }
+    }
+
+    /**
+     * Rebuilds the suggester from the current searcher and swaps it in.
+     */
+    public synchronized void rebuild() throws IOException {
+        Map<IndexField, Map<String, Float>> terms = new EnumMap<>(IndexField.class);
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                Object key = leaf.reader().getCombinedCoreAndDeletesKey(); // changes with deletes and dv updates
+                Map<IndexField, Map<String, Float>> leafTerms = segmentTerms.get(key);
+                if (leafTerms == null) {
+                    leafTerms = collectTerms(leaf.reader());
+                    segmentTerms.put(key, leafTerms);
+                }
+
+                leafTerms.forEach((field, ratings) -> {
+                    Map<String, Float> merged = terms.computeIfAbsent(field, f -> new HashMap<>());
+                    ratings.forEach((label, rating) -> merged.merge(label, rating, Math::max));
+                });
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < FIELDS.length; i++) {
+            for (Map.Entry<String, Float> term : terms.getOrDefault(FIELDS[i], Collections.emptyMap()).entrySet()) {
+                String label = term.getKey();
+                long weight = Math.round(term.getValue() * 100);
+                byte[] labelBytes = label.getBytes(StandardCharsets.UTF_8);
+                byte[] payload = new byte[labelBytes.length + 1];
+                payload[0] = (byte) i;
+                System.arraycopy(labelBytes, 0, payload, 1, labelBytes.length);
+
+                entries.add(new Entry(label, weight, payload));
+                if (infix) {
+                    for (int space = label.indexOf(' '); space >= 0; space = label.indexOf(' ', space + 1)) {
+                        String suffix = label.substring(space + 1).trim();
+                        if (!suffix.isEmpty()) {
+                            entries.add(new Entry(suffix, weight, payload));
+                        }
+                    }
+                }
+            }
+        }
+
+        // Sorting the input spills to a temp directory, the built FST lives on the heap
+        try (Directory tempDir = new RAMDirectory()) {
+            AnalyzingSuggester suggester = fuzzy ? new FuzzySuggester(tempDir, "suggest", analyzer)
+                    : new AnalyzingSuggester(tempDir, "suggest", analyzer);
+            suggester.build(new EntryIterator(entries.iterator()));
+            lookup = suggester;
+        }
+    }
+
+    @Override
+    public void beforeRefresh() {
+        // no-op
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+        if (didRefresh) {
+            scheduleRebuild();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static Map<IndexField, Map<String, Float>> collectTerms(LeafReader reader) throws IOException {
+        Bits liveDocs = reader.getLiveDocs();
+        NumericDocValues ratings = DocValues.getNumeric(reader, IndexField.RATING.getFieldName());
+
+        Map<IndexField, Map<String, Float>> terms = new EnumMap<>(IndexField.class);
+        for (IndexField field : FIELDS) {
+            SortedSetDocValues values = DocValues.getSortedSet(reader, field.getFieldName());
+            float[] best = new float[(int) values.getValueCount()];
+            Arrays.fill(best, -1);
+
+            for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+
+                float rating = (float) Double.longBitsToDouble(ratings.get(doc));
+                values.setDocument(doc);
+                for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                    best[(int) ord] = Math.max(best[(int) ord], rating);
+                }
+            }
+
+            Map<String, Float> fieldTerms = new HashMap<>();
+            for (int ord = 0; ord < best.length; ord++) {
+                if (best[ord] >= 0) { // only on deleted movies otherwise
+                    fieldTerms.put(values.lookupOrd(ord).utf8ToString(), best[ord]);
+                }
+            }
+
+            terms.put(field, fieldTerms);
+        }
+
+        return terms;
+    }
+
+    private static class Entry {
+        private final BytesRef text;
+        private final long weight;
+        private final BytesRef payload;
+
+        Entry(String text, long weight, byte[] payload) {
+            this.text = new BytesRef(text);
+            this.weight = weight;
+            this.payload = new BytesRef(payload);
+        }
+    }
+
+    private static class EntryIterator implements InputIterator {
+        private final Iterator<Entry> entries;
+        private Entry current;
+
+        EntryIterator(Iterator<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public BytesRef next() {
+            current = entries.hasNext() ? entries.next() : null;
+            return current == null ? null : current.text;
+        }
+
+        @Override
+        public long weight() {
+            return current.weight;
+        }
+
+        @Override
+        public BytesRef payload() {
+            return current.payload;
+        }
+
+        @Override
+        public boolean hasPayloads() {
+            return true;
+        }
+
+        @Override
+        public Set<BytesRef> contexts() {
+            return null;
+        }
+
+        @Override
+        public boolean hasContexts() {
+            return false;
+        }
+    }
+}
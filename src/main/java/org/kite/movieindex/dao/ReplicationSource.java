@@ -0,0 +1,27 @@
+package org.kite.movieindex.dao;
+
+import org.kite.movieindex.entity.ReplicationCommit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+
+/**
+ * Where a replica copies commits from, set by main.index.replication.source: the index path of a primary on a shared
+ * or local disk, or the base URL of a primary node serving /replication.
+ */
+public interface ReplicationSource {
+    /**
+     * @return the latest commit of the shard, or null if the primary has none yet
+     */
+    ReplicationCommit getLatestCommit(int shard) throws IOException;
+
+    InputStream openFile(int shard, String name) throws IOException;
+
+    static ReplicationSource of(String location, int shardCount) {
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            return new HttpReplicationSource(location);
+        }
+        return new DirectoryReplicationSource(Paths.get(location), shardCount);
+    }
+}
@@ -0,0 +1,128 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+
+/**
+ * Encodes the last hit of a page (doc id, score and sort values) into an opaque URL-safe string, that can be passed
+ * back to {@link MovieIndexer#search(org.apache.lucene.search.Query, org.apache.lucene.search.Sort, String, int)}
+ * to continue right after it.
+ */
+public final class SearchCursor {
+    private static final byte NULL = 0;
+    private static final byte BYTES = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte FLOAT = 4;
+    private static final byte INT = 5;
+    private static final int MAX_FIELDS = 16; // far more than any sort has, cursors come from clients
+
+    private SearchCursor() {
+        // no-op
+    }
+
+    public static String encode(ScoreDoc scoreDoc) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(scoreDoc.doc);
+            out.writeFloat(scoreDoc.score);
+
+            if (!(scoreDoc instanceof FieldDoc)) {
+                out.writeInt(-1);
+            } else {
+                Object[] fields = ((FieldDoc) scoreDoc).fields;
+                out.writeInt(fields.length);
+                for (Object field : fields) {
+                    writeValue(out, field);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen for an in-memory stream
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    public static ScoreDoc decode(String cursor) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            int doc = in.readInt();
+            float score = in.readFloat();
+            int fieldsCount = in.readInt();
+            if (fieldsCount < 0) {
+                return new ScoreDoc(doc, score);
+            }
+            if (fieldsCount > MAX_FIELDS) {
+                throw new IllegalArgumentException("Too many sort values: " + fieldsCount);
+            }
+
+            Object[] fields = new Object[fieldsCount];
+            for (int i = 0; i < fieldsCount; i++) {
+                fields[i] = readValue(in);
+            }
+
+            return new FieldDoc(doc, score, fields);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed search cursor: " + cursor, e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof BytesRef) {
+            BytesRef ref = (BytesRef) value;
+            out.writeByte(BYTES);
+            out.writeInt(ref.length);
+            out.write(ref.bytes, ref.offset, ref.length);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported sort value type: " + value.getClass());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case BYTES:
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) { // the whole cursor is in memory
+                    throw new IllegalArgumentException("Bad sort value length: " + length);
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                return new BytesRef(bytes);
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case INT:
+                return in.readInt();
+            default:
+                throw new IllegalArgumentException("Unknown sort value type: " + type);
+        }
+    }
+}
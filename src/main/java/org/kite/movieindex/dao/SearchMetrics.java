@@ -0,0 +1,143 @@
+package org.kite.movieindex.dao;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the stages of searches and groupBys, plus ingest counters. Stages are also added to the
+ * trace of the current thread if there is one, so a single slow search can be broken down.
+ */
+public class SearchMetrics {
+    public enum Stage {
+        ACQUIRE,        // getting a searcher from the searcher manager
+        QUERY_BUILD,    // FilterForm.buildQuery and buildSort
+        COLLECT,        // running the query and collecting top docs or facet hits
+        LOAD,           // reading found movies from stored fields or doc values
+        FACET           // counting groups out of collected hits
+    }
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Timer indexBatches = registry.timer("index.batches");
+    private final Meter indexedDocs = registry.meter("index.docs");
+    private final Meter deletedDocs = registry.meter("index.deletes");
+    private final Meter ratingUpdates = registry.meter("index.ratingUpdates");
+    private final Meter earlyTerminated = registry.meter("search.earlyTerminated");
+    private final ThreadLocal<Trace> trace = new ThreadLocal<>();
+
+    public SearchMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, registry.timer("search." + stage.name().toLowerCase()));
+        }
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when the stage started
+     */
+    public void record(Stage stage, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        stages.get(stage).update(elapsed, TimeUnit.NANOSECONDS);
+
+        Trace current = trace.get();
+        if (current != null) {
+            current.add(stage, elapsed);
+        }
+    }
+
+    public void recordIndexed(int docs, long startNanos) {
+        indexBatches.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        indexedDocs.mark(docs);
+    }
+
+    public void recordDeleted(int docs) {
+        deletedDocs.mark(docs);
+    }
+
+    public void recordRatingUpdate() {
+        ratingUpdates.mark();
+    }
+
+    /**
+     * A sorted search stopped collecting a segment early, and had to count its total hits apart.
+     */
+    public void recordEarlyTermination() {
+        earlyTerminated.mark();
+    }
+
+    /**
+     * Starts collecting the stages run by this thread, until {@link #endTrace()}.
+     */
+    public void startTrace() {
+        trace.set(new Trace());
+    }
+
+    public Trace endTrace() {
+        Trace current = trace.get();
+        trace.remove();
+        return current;
+    }
+
+    /**
+     * @return count, rate and latency percentiles in ms of every stage and ingest metric
+     */
+    public Map<String, Map<String, Number>> getSnapshot() {
+        Map<String, Map<String, Number>> snapshot = new LinkedHashMap<>();
+        registry.getTimers().forEach((name, timer) -> {
+            Snapshot latencies = timer.getSnapshot();
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("count", timer.getCount());
+            values.put("rate1m", timer.getOneMinuteRate());
+            values.put("meanMs", toMillis(latencies.getMean()));
+            values.put("p50Ms", toMillis(latencies.getMedian()));
+            values.put("p95Ms", toMillis(latencies.get95thPercentile()));
+            values.put("p99Ms", toMillis(latencies.get99thPercentile()));
+            values.put("maxMs", toMillis(latencies.getMax()));
+            snapshot.put(name, values);
+        });
+        registry.getMeters().forEach((name, meter) -> {
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("count", meter.getCount());
+            values.put("rate1m", meter.getOneMinuteRate());
+            snapshot.put(name, values);
+        });
+
+        return snapshot;
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Time spent by one search in each stage.
+     */
+    public static class Trace {
+        private final long startNanos = System.nanoTime();
+        private final Map<Stage, Long> stageNanos = new EnumMap<>(Stage.class);
+
+        void add(Stage stage, long nanos) {
+            stageNanos.merge(stage, nanos, Long::sum);
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder breakdown = new StringBuilder();
+            stageNanos.forEach((stage, nanos) -> breakdown.append(breakdown.length() == 0 ? "" : ", ")
+                    .append(stage.name().toLowerCase()).append('=')
+                    .append(String.format(Locale.ROOT, "%.2fms", toMillis(nanos))));
+            return breakdown.toString();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Like {@link SearcherManager}, but for a sharded index: the searcher reads all shards through one
+ * {@link MultiReader}, so cursors, facet ordinals and the query cache work across shards as with a single index.
+ * The segments of all shards are searched in parallel by the searcher, which merges their top docs with the same
+ * sort. A refresh only reopens the shards that changed.
+ */
+public class ShardSearcherManager extends ReferenceManager<IndexSearcher> {
+    private final List<IndexShard> shards;
+    private final SearcherFactory searcherFactory;
+
+    public ShardSearcherManager(List<IndexShard> shards, SearcherFactory searcherFactory) throws IOException {
+        this.shards = shards;
+        this.searcherFactory = searcherFactory;
+
+        DirectoryReader[] readers = new DirectoryReader[shards.size()];
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = shards.get(i).openReader();
+            }
+
+            current = SearcherManager.getSearcher(searcherFactory, new ShardReader(readers), null);
+        } finally {
+            decRef(readers); // the shard reader holds its own references
+        }
+    }
+
+    @Override
+    protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+        List<DirectoryReader> current = ((ShardReader) referenceToRefresh.getIndexReader()).getShardReaders();
+        DirectoryReader[] readers = new DirectoryReader[current.size()];
+        DirectoryReader[] reopened = new DirectoryReader[current.size()];
+        boolean changed = false;
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                reopened[i] = shards.get(i).reopen(current.get(i));
+                readers[i] = reopened[i] == null ? current.get(i) : reopened[i];
+                changed |= reopened[i] != null;
+            }
+
+            if (!changed) {
+                return null;
+            }
+
+            return SearcherManager.getSearcher(searcherFactory, new ShardReader(readers),
+                    referenceToRefresh.getIndexReader());
+        } finally {
+            decRef(reopened);
+        }
+    }
+
+    @Override
+    protected void decRef(IndexSearcher reference) throws IOException {
+        reference.getIndexReader().decRef();
+    }
+
+    @Override
+    protected boolean tryIncRef(IndexSearcher reference) {
+        return reference.getIndexReader().tryIncRef();
+    }
+
+    @Override
+    protected int getRefCount(IndexSearcher reference) {
+        return reference.getIndexReader().getRefCount();
+    }
+
+    private static void decRef(DirectoryReader[] readers) throws IOException {
+        for (DirectoryReader reader : readers) {
+            if (reader != null) {
+                reader.decRef();
+            }
+        }
+    }
+
+    /**
+     * Keeps the shard readers in shard order, so each one can be reopened from its own shard.
+     */
+    private static class ShardReader extends MultiReader {
+        ShardReader(DirectoryReader[] readers) throws IOException {
+            super(readers, false); // increments the reference count of the shard readers, decrements it on close
+        }
+
+        @SuppressWarnings("unchecked")
+        List<DirectoryReader> getShardReaders() {
+            return new ArrayList<>((List<DirectoryReader>) getSequentialSubReaders());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.kite.movieindex.dao;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns free text into queries over the analysed text fields. The text is analysed the same way as at index time and
+ * every token has to match, movies containing the tokens as a phrase rank first. The fuzzy variant matches each token
+ * with a bounded {@link FuzzyQuery} instead, which is much more expensive and should only be a fallback for when the
+ * exact one finds nothing.
+ */
+public class TextQueryParser {
+    public static final TextQueryParser DEFAULT = new TextQueryParser(new StandardAnalyzer(), 1, 2, 50);
+
+    private static final float PHRASE_BOOST = 2;
+
+    private final Analyzer analyzer;
+    private final int maxEdits;
+    private final int prefixLength;
+    private final int maxExpansions;
+
+    /**
+     * @param analyzer the analyzer the text fields were indexed with
+     * @param maxEdits edits allowed per token by fuzzy queries, at most 2
+     * @param prefixLength leading characters of a token that fuzzy queries match exactly, shorter tokens never fuzzy
+     *                     match
+     * @param maxExpansions most index terms a fuzzy token is expanded to
+     */
+    public TextQueryParser(Analyzer analyzer, int maxEdits, int prefixLength, int maxExpansions) {
+        this.analyzer = analyzer;
+        this.maxEdits = maxEdits;
+        this.prefixLength = prefixLength;
+        this.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * @return a query matching the text in any of the fields, or nothing if the text has no tokens, e.g. only stop
+     * words
+     */
+    public Query parse(String text, boolean fuzzy, IndexField... fields) {
+        if (fields.length == 1) {
+            Query query = parse(text, fuzzy, fields[0]);
+            return query == null ? new BooleanQuery.Builder().build() : query;
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (IndexField field : fields) {
+            Query query = parse(text, fuzzy, field);
+            if (query != null) {
+                builder.add(query, BooleanClause.Occur.SHOULD);
+            }
+        }
+
+        return builder.build();
+    }
+
+    private Query parse(String text, boolean fuzzy, IndexField field) {
+        List<Term> terms = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(field.getFieldName(), text)) {
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute positionAttribute = stream.addAttribute(PositionIncrementAttribute.class);
+            stream.reset();
+
+            int position = -1;
+            while (stream.incrementToken()) {
+                position += positionAttribute.getPositionIncrement(); // skips over removed stop words
+                terms.add(new Term(field.getFieldName(), termAttribute.toString()));
+                positions.add(position);
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen when reading from a string
+        }
+
+        if (terms.isEmpty()) {
+            return null;
+        } else if (terms.size() == 1) {
+            return termQuery(terms.get(0), fuzzy);
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (Term term : terms) {
+            builder.add(termQuery(term, fuzzy), BooleanClause.Occur.MUST);
+        }
+
+        if (!fuzzy) {
+            PhraseQuery.Builder phrase = new PhraseQuery.Builder();
+            for (int i = 0; i < terms.size(); i++) {
+                phrase.add(terms.get(i), positions.get(i));
+            }
+            builder.add(new BoostQuery(phrase.build(), PHRASE_BOOST), BooleanClause.Occur.SHOULD);
+        }
+
+        return builder.build();
+    }
+
+    private Query termQuery(Term term, boolean fuzzy) {
+        if (fuzzy && term.text().codePointCount(0, term.text().length()) > prefixLength) {
+            return new FuzzyQuery(term, maxEdits, prefixLength, maxExpansions, true);
+        }
+
+        return new TermQuery(term);
+    }
+}
@@ -3,22 +3,24 @@ package org.kite.movieindex.entity;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.lucene.document.FloatPoint;
-import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.FuzzyQuery;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
-import org.apache.lucene.search.SortedSetSortField;
 import org.apache.lucene.search.TermQuery;
+import org.kite.movieindex.dao.DoubleDocValuesRangeQuery;
 import org.kite.movieindex.dao.IndexField;
+import org.kite.movieindex.dao.LongPointOrDocValuesRangeQuery;
+import org.kite.movieindex.dao.TextQueryParser;
 
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -33,18 +35,27 @@ public class FilterForm {
     private FilterSection<Genre> genres;
     private int page = 1;
     private int pageSize = 10;
+    private String cursor; // SearchResult.cursor of the previous page, takes precedence over page
     private List<OrderBy> orderBy;
+    private Set<IndexField> fields; // fields of found movies to load, all if empty
 
     public Query buildQuery() {
+        return buildQuery(TextQueryParser.DEFAULT, false);
+    }
+
+    /**
+     * @param fuzzy match the text filters fuzzily, only worth it when the exact query finds nothing
+     */
+    public Query buildQuery(TextQueryParser parser, boolean fuzzy) {
         if (isEmpty()) {
             return new MatchAllDocsQuery();
         }
 
         BooleanQuery.Builder builder = new BooleanQuery.Builder();
 
-        addSearchStringQuery(builder);
-        addDirectorQuery(builder);
-        addCastQuery(builder);
+        addSearchStringQuery(builder, parser, fuzzy);
+        addDirectorQuery(builder, parser, fuzzy);
+        addCastQuery(builder, parser, fuzzy);
         addReleaseDateQuery(builder);
         addRatingQuery(builder);
         addGenreQuery(builder);
@@ -57,17 +68,79 @@ public class FilterForm {
             return null;
         }
 
-        List<SortField> sortFields = orderBy.stream().map(o -> {
-            if (o.getField().getType() == SortField.Type.STRING) {
-                return new SortedSetSortField(o.getField().getFieldName(), o.isDesc());
-            } else {
-                return new SortField(o.getField().getFieldName(), o.getField().getType(), o.isDesc());
-            }
-        }).collect(Collectors.toList());
+        List<SortField> sortFields = orderBy.stream().map(o -> o.getField().getSortField(o.isDesc()))
+                .collect(Collectors.toList());
 
         return new Sort(sortFields.toArray(new SortField[sortFields.size()]));
     }
 
+    /**
+     * @return a key that is equal for all forms finding the same page of the same movies
+     */
+    public String buildCacheKey() {
+        StringBuilder key = new StringBuilder(buildFilterCacheKey());
+
+        key.append("|orderBy=");
+        if (orderBy != null) {
+            orderBy.forEach(o -> key.append(o.getField()).append(o.isDesc() ? " desc," : " asc,"));
+        }
+
+        key.append("|page=").append(cursor == null ? page : 0).append("|pageSize=").append(pageSize)
+                .append("|cursor=").append(cursor);
+        key.append("|fields=").append(CollectionUtils.isEmpty(fields) ? "all" : EnumSet.copyOf(fields));
+        return key.toString();
+    }
+
+    /**
+     * @return a key that is equal for all forms matching the same movies, regardless of sorting and paging
+     */
+    public String buildFilterCacheKey() {
+        if (isEmpty()) {
+            return "*";
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append("searchString=").append(normalize(searchString));
+        key.append("|director=").append(normalize(director));
+        key.append("|cast=").append(normalize(cast));
+
+        key.append("|releaseDate=");
+        if (releaseDateBetween != null) {
+            key.append(releaseDateBetween.getLeft() == null ? "" : releaseDateBetween.getLeft().getTime()).append("..")
+                    .append(releaseDateBetween.getRight() == null ? "" : releaseDateBetween.getRight().getTime());
+        }
+
+        key.append("|rating=");
+        if (ratingBetween != null) {
+            key.append(ratingBetween.getLeft() == null ? "" : ratingBetween.getLeft()).append("..")
+                    .append(ratingBetween.getRight() == null ? "" : ratingBetween.getRight());
+        }
+
+        key.append("|genres=");
+        if (genres != null && CollectionUtils.isNotEmpty(genres.getField())) {
+            Set<Genre> distinct = EnumSet.copyOf(genres.getField());
+            key.append(distinct).append(distinct.size() > 1 && genres.isConjunction() ? " all" : " any");
+        } else if (genres != null) {
+            key.append("none");
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Text filters go through StandardAnalyzer, which ignores case and surrounding blanks
+     */
+    private static String normalize(String text) {
+        return StringUtils.isBlank(text) ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return whether the form has filters that can match fuzzily
+     */
+    public boolean hasTextFilters() {
+        return StringUtils.isNotBlank(searchString) || StringUtils.isNotBlank(director) || StringUtils.isNotBlank(cast);
+    }
+
     public boolean isEmpty() {
         return StringUtils.isBlank(searchString) && StringUtils.isBlank(director) && StringUtils.isBlank(cast)
                 && releaseDateBetween == null && ratingBetween == null && genres == null;
@@ -77,18 +150,18 @@ public class FilterForm {
         if (releaseDateBetween != null && (releaseDateBetween.getLeft() != null || releaseDateBetween.getRight() != null)) {
             Query query = null;
             if (releaseDateBetween.getLeft() != null && releaseDateBetween.getRight() != null) {
-                query = LongPoint.newRangeQuery(IndexField.RELEASE_DATE.getFieldName(), releaseDateBetween.getLeft().getTime(),
-                        releaseDateBetween.getRight().getTime());
+                query = new LongPointOrDocValuesRangeQuery(IndexField.RELEASE_DATE.getFieldName(),
+                        releaseDateBetween.getLeft().getTime(), releaseDateBetween.getRight().getTime());
                 // Note: this is an inclusive range. To make an exclusive, use Math.addExact(lowerValue, 1) or Math.addExact(upperValue, -1)
             } else if (releaseDateBetween.getLeft() != null) {
-                query = LongPoint.newRangeQuery(IndexField.RELEASE_DATE.getFieldName(), releaseDateBetween.getLeft().getTime(),
-                        Long.MAX_VALUE); // This way we can do half-open ranges
+                query = new LongPointOrDocValuesRangeQuery(IndexField.RELEASE_DATE.getFieldName(),
+                        releaseDateBetween.getLeft().getTime(), Long.MAX_VALUE); // This way we can do half-open ranges
             } else if (releaseDateBetween.getRight() != null) {
-                query = LongPoint.newRangeQuery(IndexField.RELEASE_DATE.getFieldName(), Long.MIN_VALUE,
+                query = new LongPointOrDocValuesRangeQuery(IndexField.RELEASE_DATE.getFieldName(), Long.MIN_VALUE,
                         releaseDateBetween.getRight().getTime());
             }
 
-            builder.add(query, BooleanClause.Occur.MUST);
+            builder.add(query, BooleanClause.Occur.FILTER); // filters don't score, so they can be cached per segment
         }
     }
 
@@ -96,21 +169,18 @@ public class FilterForm {
         if (ratingBetween != null && (ratingBetween.getLeft() != null || ratingBetween.getRight() != null)) {
             Query query = null;
             if (ratingBetween.getLeft() != null && ratingBetween.getRight() != null) {
-                query = FloatPoint.newRangeQuery(IndexField.RATING.getFieldName(), ratingBetween.getLeft(),
+                query = new DoubleDocValuesRangeQuery(IndexField.RATING.getFieldName(), ratingBetween.getLeft(),
                         ratingBetween.getRight());
             } else if (ratingBetween.getLeft() != null) {
-                query = FloatPoint.newRangeQuery(IndexField.RATING.getFieldName(), ratingBetween.getLeft(),
+                query = new DoubleDocValuesRangeQuery(IndexField.RATING.getFieldName(), ratingBetween.getLeft(),
                         Float.MAX_VALUE);
             } else if (ratingBetween.getRight() != null) {
-                query = FloatPoint.newRangeQuery(IndexField.RATING.getFieldName(), Float.MIN_VALUE,
+                query = new DoubleDocValuesRangeQuery(IndexField.RATING.getFieldName(), Float.MIN_VALUE,
                         ratingBetween.getRight());
             }
 
-            /* This way you can do an exact query:
-            FloatPoint.newExactQuery(IndexField.RATING.getFieldName(), value)
-            */
-
-            builder.add(query, BooleanClause.Occur.MUST);
+            // Ratings are updated in place, so they are matched against doc values rather than points
+            builder.add(query, BooleanClause.Occur.FILTER);
         }
     }
 
@@ -121,35 +191,26 @@ public class FilterForm {
                     new Term(IndexField.GENRE.getFieldName(), g.name().toLowerCase())),
                     genres.conjunction ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD));
 
-            builder.add(genreBuilder.build(), BooleanClause.Occur.MUST);
+            builder.add(genreBuilder.build(), BooleanClause.Occur.FILTER);
         }
     }
 
-    private void addSearchStringQuery(BooleanQuery.Builder builder) {
+    private void addSearchStringQuery(BooleanQuery.Builder builder, TextQueryParser parser, boolean fuzzy) {
         if (StringUtils.isNotBlank(searchString)) {
-            BooleanQuery.Builder searchStringBuilder = new BooleanQuery.Builder();
-            searchStringBuilder.add(new FuzzyQuery(new Term(IndexField.NAME.getFieldName(), searchString)),
-                    BooleanClause.Occur.SHOULD);
-            searchStringBuilder.add(new FuzzyQuery(new Term(IndexField.DIRECTOR.getFieldName(), searchString)),
-                    BooleanClause.Occur.SHOULD);
-            searchStringBuilder.add(new FuzzyQuery(new Term(IndexField.CAST.getFieldName(), searchString)),
-                    BooleanClause.Occur.SHOULD);
-
-            builder.add(searchStringBuilder.build(), BooleanClause.Occur.MUST);
+            builder.add(parser.parse(searchString, fuzzy, IndexField.NAME, IndexField.DIRECTOR, IndexField.CAST),
+                    BooleanClause.Occur.MUST);
         }
     }
 
-    private void addDirectorQuery(BooleanQuery.Builder builder) {
+    private void addDirectorQuery(BooleanQuery.Builder builder, TextQueryParser parser, boolean fuzzy) {
         if (StringUtils.isNotBlank(director)) {
-            builder.add(new FuzzyQuery(new Term(IndexField.DIRECTOR.getFieldName(), director)),
-                    BooleanClause.Occur.MUST);
+            builder.add(parser.parse(director, fuzzy, IndexField.DIRECTOR), BooleanClause.Occur.MUST);
         }
     }
 
-    private void addCastQuery(BooleanQuery.Builder builder) {
+    private void addCastQuery(BooleanQuery.Builder builder, TextQueryParser parser, boolean fuzzy) {
         if (StringUtils.isNotBlank(cast)) {
-            builder.add(new FuzzyQuery(new Term(IndexField.CAST.getFieldName(), cast)),
-                    BooleanClause.Occur.MUST);
+            builder.add(parser.parse(cast, fuzzy, IndexField.CAST), BooleanClause.Occur.MUST);
         }
     }
 
@@ -217,6 +278,14 @@ public class FilterForm {
         this.pageSize = pageSize;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public List<OrderBy> getOrderBy() {
         return orderBy;
     }
@@ -225,6 +294,21 @@ public class FilterForm {
         this.orderBy = orderBy;
     }
 
+    public Set<IndexField> getFields() {
+        return fields;
+    }
+
+    public void setFields(Set<IndexField> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @return fields to load or null to load all of them
+     */
+    public Set<IndexField> buildFieldsToLoad() {
+        return CollectionUtils.isEmpty(fields) ? null : fields;
+    }
+
     public static class FilterSection<T> {
         private List<T> field;
         private boolean conjunction = false;
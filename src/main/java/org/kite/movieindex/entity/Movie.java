@@ -5,6 +5,7 @@ import java.util.Date;
 import java.util.List;
 
 public class Movie {
+    private String id; // stable key, movies with the same id replace each other in the index
     private String name;
     private String director;
     private List<String> cast;
@@ -16,6 +17,7 @@ public class Movie {
     }
 
     public Movie(Movie other) {
+        id = other.id;
         name = other.name;
         director = other.director;
 
@@ -31,6 +33,14 @@ public class Movie {
         }
     }
 
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,45 @@
+package org.kite.movieindex.entity;
+
+import java.util.Map;
+
+/**
+ * A commit point of one index shard, as served by a primary to its replicas.
+ */
+public class ReplicationCommit {
+    private long generation;
+    private String segmentsFileName;
+    private Map<String, Long> files; // name -> length, the segments file included
+
+    public ReplicationCommit() {
+    }
+
+    public ReplicationCommit(long generation, String segmentsFileName, Map<String, Long> files) {
+        this.generation = generation;
+        this.segmentsFileName = segmentsFileName;
+        this.files = files;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public String getSegmentsFileName() {
+        return segmentsFileName;
+    }
+
+    public void setSegmentsFileName(String segmentsFileName) {
+        this.segmentsFileName = segmentsFileName;
+    }
+
+    public Map<String, Long> getFiles() {
+        return files;
+    }
+
+    public void setFiles(Map<String, Long> files) {
+        this.files = files;
+    }
+}
@@ -9,6 +9,7 @@ public class SearchResult<T> {
     private List<T> results;
     private Integer totalPagesCount;
     private Integer totalResultsCount;
+    private String cursor; // points past the last result, null if this is the last page
 
     public SearchResult() {
     }
@@ -19,6 +20,11 @@ public class SearchResult<T> {
         this.totalResultsCount = totalResultsCount;
     }
 
+    public SearchResult(List<T> results, Integer totalPagesCount, Integer totalResultsCount, String cursor) {
+        this(results, totalPagesCount, totalResultsCount);
+        this.cursor = cursor;
+    }
+
     public List<T> getResults() {
         return results;
     }
@@ -42,4 +48,12 @@ public class SearchResult<T> {
     public void setTotalResultsCount(Integer totalResultsCount) {
         this.totalResultsCount = totalResultsCount;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
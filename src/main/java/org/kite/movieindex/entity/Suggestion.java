@@ -0,0 +1,42 @@
+package org.kite.movieindex.entity;
+
+import org.kite.movieindex.dao.IndexField;
+
+public class Suggestion {
+    private String text;
+    private IndexField field; // NAME, DIRECTOR or CAST
+    private Float rating; // best rating among the movies the text appears in
+
+    public Suggestion() {
+    }
+
+    public Suggestion(String text, IndexField field, Float rating) {
+        this.text = text;
+        this.field = field;
+        this.rating = rating;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public IndexField getField() {
+        return field;
+    }
+
+    public void setField(IndexField field) {
+        this.field = field;
+    }
+
+    public Float getRating() {
+        return rating;
+    }
+
+    public void setRating(Float rating) {
+        this.rating = rating;
+    }
+}
@@ -0,0 +1,41 @@
+package org.kite.movieindex.ingest;
+
+import org.kite.movieindex.entity.Movie;
+
+/**
+ * A line of the change log: either a movie to add or replace, or the id of a movie to delete
+ */
+public class ChangeLogEntry {
+    private Operation op;
+    private Movie movie;
+    private String id;
+
+    public Operation getOp() {
+        return op;
+    }
+
+    public void setOp(Operation op) {
+        this.op = op;
+    }
+
+    public Movie getMovie() {
+        return movie;
+    }
+
+    public void setMovie(Movie movie) {
+        this.movie = movie;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public enum Operation {
+        UPSERT,
+        DELETE
+    }
+}
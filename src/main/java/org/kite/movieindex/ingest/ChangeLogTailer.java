@@ -0,0 +1,226 @@
+package org.kite.movieindex.ingest;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.lang3.StringUtils;
+import org.kite.movieindex.dao.MovieIndexer;
+import org.kite.movieindex.entity.Movie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails an append-only change log of JSON lines ({@link ChangeLogEntry}) and applies new entries to the index in
+ * micro-batches. The byte offset of the last applied entry goes to the commit user data of the index, so after a
+ * restart the log is read from the last committed offset. Entries applied after that commit are applied once more,
+ * which is harmless as upserts without a movie id are rejected: without an id a movie can only be added, not replaced.
+ */
+@Service
+public class ChangeLogTailer {
+    public static final String OFFSET_KEY = "changelog.offset";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeLogTailer.class);
+    private static final ObjectReader ENTRY_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(ChangeLogEntry.class);
+
+    @Autowired
+    private MovieIndexer indexer;
+
+    @Value("${main.changelog.path}")
+    private String changeLogPath; // empty to disable tailing
+
+    @Value("${main.changelog.pollInterval}")
+    private long pollInterval = 1000; // ms
+
+    @Value("${main.changelog.batchSize}")
+    private int batchSize = 1000; // entries applied at once
+
+    private Path changeLog;
+    private long offset;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (StringUtils.isBlank(changeLogPath)) {
+            return;
+        }
+        if (indexer.isReplica()) {
+            LOGGER.warn("Not tailing change log {}, replicas get the changes from the primary", changeLogPath);
+            return;
+        }
+
+        changeLog = Paths.get(changeLogPath);
+        offset = Long.parseLong(indexer.getCommitData().getOrDefault(OFFSET_KEY, "0"));
+        LOGGER.info("Tailing change log {} from offset {}", changeLog, offset);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "changelog-tailer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                while (applyPending() == batchSize) {
+                    // keep going until the log is drained
+                }
+            } catch (Exception e) {
+                LOGGER.error("Failed to apply change log " + changeLog + " at offset " + offset, e); // retry next time
+            }
+        }, 0, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies up to main.changelog.batchSize complete lines written after the current offset. A line that isn't
+     * terminated yet is left for the next call.
+     *
+     * @return number of valid entries applied, which is main.changelog.batchSize if more may be pending
+     */
+    public int applyPending() throws IOException {
+        if (!Files.exists(changeLog)) {
+            return 0;
+        }
+
+        ObjectReader entryReader = ENTRY_READER.with(TimeZone.getDefault()); // dates at midnight like in dumps
+        List<ChangeLogEntry> entries = new ArrayList<>();
+        long position = offset;
+        try (FileChannel channel = FileChannel.open(changeLog, StandardOpenOption.READ)) {
+            if (channel.size() < offset) {
+                throw new IOException("Change log is shorter than the applied offset " + offset);
+            }
+
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while (entries.size() < batchSize && (b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+
+                String json = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                position += line.size() + 1;
+                line.reset();
+
+                if (StringUtils.isBlank(json)) {
+                    continue;
+                }
+
+                String problem;
+                try {
+                    ChangeLogEntry entry = entryReader.readValue(json);
+                    problem = validate(entry);
+                    if (problem == null) {
+                        entries.add(entry);
+                    }
+                } catch (IOException e) {
+                    problem = e.getMessage();
+                }
+                if (problem != null) {
+                    LOGGER.warn("Skipping malformed change log entry before offset {}: {}", position, problem);
+                }
+            }
+        }
+
+        if (position == offset) {
+            return 0;
+        }
+
+        apply(entries);
+        offset = position;
+
+        Map<String, String> commitData = new HashMap<>(indexer.getCommitData());
+        commitData.put(OFFSET_KEY, Long.toString(offset));
+        indexer.setCommitData(commitData); // persisted by the next commit, together with the changes
+
+        return entries.size();
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return why the entry can't be applied, null if it can
+     */
+    private static String validate(ChangeLogEntry entry) {
+        if (entry.getOp() == ChangeLogEntry.Operation.DELETE) {
+            if (entry.getId() == null && (entry.getMovie() == null || entry.getMovie().getId() == null)) {
+                return "id is required to delete a movie";
+            }
+            return null;
+        } else if (entry.getOp() == ChangeLogEntry.Operation.UPSERT && entry.getMovie() != null) {
+            if (entry.getMovie().getId() == null) { // replays would add the movie again
+                return "id is required to upsert a movie";
+            }
+            return MovieImporter.validate(entry.getMovie());
+        } else {
+            return "op and movie are required";
+        }
+    }
+
+    private void apply(List<ChangeLogEntry> entries) throws IOException {
+        // Consecutive entries of the same kind go together, keeping the order between upserts and deletes
+        List<Movie> upserts = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        for (ChangeLogEntry entry : entries) {
+            if (entry.getOp() == ChangeLogEntry.Operation.DELETE) {
+                flushUpserts(upserts);
+                deletes.add(entry.getId() != null ? entry.getId() : entry.getMovie().getId());
+            } else {
+                flushDeletes(deletes);
+                upserts.add(entry.getMovie());
+            }
+        }
+
+        flushUpserts(upserts);
+        flushDeletes(deletes);
+    }
+
+    private void flushUpserts(List<Movie> upserts) throws IOException {
+        if (!upserts.isEmpty()) {
+            indexer.index(upserts);
+            upserts.clear();
+        }
+    }
+
+    private void flushDeletes(List<String> deletes) throws IOException {
+        if (!deletes.isEmpty()) {
+            indexer.delete(deletes);
+            deletes.clear();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.kite.movieindex.ingest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kite.movieindex.entity.Genre;
+import org.kite.movieindex.entity.Movie;
+
+import java.io.BufferedReader;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reads {@code [id,]name,director,cast,releaseDate,rating,genres} records. Values can be quoted with '"', a quote
+ * inside a quoted value is doubled. Quoted values can't span several lines
+ */
+public class CsvMovieReader extends MovieDumpReader {
+    private static final int COLUMNS = 6;
+    private static final String VALUES_SEPARATOR = "\\|";
+
+    public CsvMovieReader(BufferedReader reader) {
+        super(reader);
+    }
+
+    @Override
+    protected boolean skip(String line) {
+        String lowerCase = line.toLowerCase();
+        return getLineNumber() == 1 && (lowerCase.startsWith("name,") || lowerCase.startsWith("id,")); // header
+    }
+
+    @Override
+    protected Movie parse(String line) {
+        List<String> values = split(line);
+        Movie movie = new Movie();
+        if (values.size() == COLUMNS + 1) {
+            movie.setId(StringUtils.trimToNull(values.remove(0)));
+        }
+
+        if (values.size() != COLUMNS) {
+            throw new IllegalArgumentException("Expected " + COLUMNS + " columns, but got " + values.size());
+        }
+
+        movie.setName(StringUtils.trimToNull(values.get(0)));
+        movie.setDirector(StringUtils.trimToNull(values.get(1)));
+        movie.setCast(splitValues(values.get(2)));
+
+        if (StringUtils.isNotBlank(values.get(3))) {
+            LocalDate date = LocalDate.parse(values.get(3).trim());
+            movie.setReleaseDate(Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        }
+
+        if (StringUtils.isNotBlank(values.get(4))) {
+            movie.setRating(Float.parseFloat(values.get(4).trim()));
+        }
+
+        movie.setGenres(splitValues(values.get(5)).stream().map(g -> Genre.valueOf(g.toUpperCase()))
+                .collect(Collectors.toList()));
+        return movie;
+    }
+
+    private static List<String> splitValues(String value) {
+        return Arrays.stream(value.split(VALUES_SEPARATOR)).map(String::trim).filter(StringUtils::isNotEmpty)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> split(String line) {
+        List<String> values = new ArrayList<>(COLUMNS);
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted value");
+        }
+
+        values.add(value.toString());
+        return values;
+    }
+}
@@ -0,0 +1,34 @@
+package org.kite.movieindex.ingest;
+
+import java.io.BufferedReader;
+
+/**
+ * Formats of movie dump files that can be imported
+ */
+public enum DumpFormat {
+    /**
+     * One JSON object per line, with the properties of {@link org.kite.movieindex.entity.Movie}
+     */
+    JSON_LINES {
+        @Override
+        public MovieDumpReader open(BufferedReader reader) {
+            return new JsonLinesMovieReader(reader);
+        }
+    },
+    /**
+     * Comma separated {@code [id,]name,director,cast,releaseDate,rating,genres} with an optional header line. Cast and
+     * genres are separated by '|', dates are yyyy-MM-dd
+     */
+    CSV {
+        @Override
+        public MovieDumpReader open(BufferedReader reader) {
+            return new CsvMovieReader(reader);
+        }
+    };
+
+    public abstract MovieDumpReader open(BufferedReader reader);
+
+    public static DumpFormat fromFileName(String fileName) {
+        return fileName.toLowerCase().endsWith(".csv") ? CSV : JSON_LINES;
+    }
+}
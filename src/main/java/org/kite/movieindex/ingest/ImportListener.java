@@ -0,0 +1,23 @@
+package org.kite.movieindex.ingest;
+
+/**
+ * Gets notified about the progress of an import
+ */
+public interface ImportListener {
+    ImportListener NONE = new ImportListener() {
+    };
+
+    /**
+     * Called after each indexed chunk
+     */
+    default void onProgress(ImportReport report) {
+        // no-op
+    }
+
+    /**
+     * Called for every record that was skipped
+     */
+    default void onError(MalformedRecordException e) {
+        // no-op
+    }
+}
@@ -0,0 +1,51 @@
+package org.kite.movieindex.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters of an import, with the messages of the first skipped records
+ */
+public class ImportReport {
+    private static final int MAX_ERRORS = 100;
+
+    private long read;
+    private long indexed;
+    private long failed;
+    private final List<String> errors = new ArrayList<>();
+
+    void addRead() {
+        read++;
+    }
+
+    void addIndexed(long count) {
+        indexed += count;
+    }
+
+    void addError(MalformedRecordException e) {
+        read++;
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of records read, including the failed ones
+     */
+    public long getRead() {
+        return read;
+    }
+
+    public long getIndexed() {
+        return indexed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
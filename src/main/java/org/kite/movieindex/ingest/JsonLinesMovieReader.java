@@ -0,0 +1,43 @@
+package org.kite.movieindex.ingest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.kite.movieindex.entity.Genre;
+import org.kite.movieindex.entity.Movie;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.TimeZone;
+
+/**
+ * Reads dumps with a JSON object per line. Each line is parsed on its own, so a broken line doesn't affect the rest
+ */
+public class JsonLinesMovieReader extends MovieDumpReader {
+    private static final ObjectReader MOVIE_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .registerModule(new SimpleModule().addDeserializer(Genre.class, new JsonDeserializer<Genre>() {
+                @Override
+                public Genre deserialize(JsonParser p, DeserializationContext context) throws IOException {
+                    return Genre.valueOf(p.getValueAsString().toUpperCase()); // dumps use lower case genres too
+                }
+            }))
+            .readerFor(Movie.class);
+
+    private final ObjectReader movieReader;
+
+    public JsonLinesMovieReader(BufferedReader reader) {
+        super(reader);
+        // Dates without a time are midnight in the default zone, like in CSV dumps, not in UTC as Jackson has it
+        movieReader = MOVIE_READER.with(TimeZone.getDefault());
+    }
+
+    @Override
+    protected Movie parse(String line) throws IOException {
+        return movieReader.readValue(line);
+    }
+}
@@ -0,0 +1,23 @@
+package org.kite.movieindex.ingest;
+
+/**
+ * A record of a movie dump that can't be turned into a movie
+ */
+public class MalformedRecordException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final long lineNumber;
+
+    public MalformedRecordException(long lineNumber, String message, Throwable cause) {
+        super("Line " + lineNumber + ": " + message, cause);
+        this.lineNumber = lineNumber;
+    }
+
+    public MalformedRecordException(long lineNumber, String message) {
+        this(lineNumber, message, null);
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+}
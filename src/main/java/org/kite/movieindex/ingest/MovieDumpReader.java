@@ -0,0 +1,59 @@
+package org.kite.movieindex.ingest;
+
+import org.kite.movieindex.entity.Movie;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Pulls movies out of a dump one record at a time, so that only the current record is held in memory
+ */
+public abstract class MovieDumpReader implements Closeable {
+    private final BufferedReader reader;
+    private long lineNumber;
+
+    protected MovieDumpReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return next movie or null at the end of the dump
+     * @throws MalformedRecordException if the record can't be parsed. The reader is positioned at the next record,
+     * so reading can go on
+     */
+    public Movie next() throws IOException, MalformedRecordException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.trim().isEmpty() || skip(line));
+
+        try {
+            return parse(line);
+        } catch (RuntimeException | IOException e) {
+            throw new MalformedRecordException(lineNumber, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return number of the last read line, starting from 1
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    protected boolean skip(String line) {
+        return false;
+    }
+
+    protected abstract Movie parse(String line) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,106 @@
+package org.kite.movieindex.ingest;
+
+import org.kite.movieindex.dao.MovieIndexer;
+import org.kite.movieindex.entity.Movie;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Imports movie dumps of any size: records are read one by one and indexed in chunks, so memory use doesn't depend
+ * on the size of the dump. Records that can't be parsed or lack required fields are reported and skipped.
+ */
+@Service
+public class MovieImporter {
+    @Autowired
+    private MovieIndexer indexer;
+
+    @Value("${main.import.chunkSize}")
+    private int chunkSize = 10000;
+
+    public ImportReport importDump(Path file) throws IOException {
+        return importDump(file, DumpFormat.fromFileName(file.getFileName().toString()), ImportListener.NONE);
+    }
+
+    public ImportReport importDump(Path file, DumpFormat format, ImportListener listener) throws IOException {
+        ImportReport report = new ImportReport();
+        List<Movie> chunk = new ArrayList<>(chunkSize);
+
+        try (
+                BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                MovieDumpReader dumpReader = format.open(reader)
+        ) {
+            while (true) {
+                Movie movie;
+                try {
+                    movie = dumpReader.next();
+                    if (movie == null) {
+                        break;
+                    }
+
+                    validate(movie, dumpReader.getLineNumber());
+                    report.addRead();
+                } catch (MalformedRecordException e) {
+                    report.addError(e);
+                    listener.onError(e);
+                    continue;
+                }
+
+                chunk.add(movie);
+                if (chunk.size() >= chunkSize) {
+                    indexChunk(chunk, report, listener);
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                indexChunk(chunk, report, listener);
+            }
+        }
+
+        return report;
+    }
+
+    private void indexChunk(List<Movie> chunk, ImportReport report, ImportListener listener) throws IOException {
+        report.addIndexed(indexer.bulkIndex(chunk.iterator()));
+        chunk.clear();
+        listener.onProgress(report);
+    }
+
+    static void validate(Movie movie, long lineNumber) throws MalformedRecordException {
+        String problem = validate(movie);
+        if (problem != null) {
+            throw new MalformedRecordException(lineNumber, problem);
+        }
+    }
+
+    /**
+     * Fills in the optional fields of a movie.
+     *
+     * @return why the movie can't be indexed, null if it can
+     */
+    static String validate(Movie movie) {
+        if (movie.getName() == null || movie.getDirector() == null || movie.getReleaseDate() == null
+                || movie.getRating() == null) {
+            return "name, director, releaseDate and rating are required";
+        }
+
+        if (movie.getCast() == null) {
+            movie.setCast(Collections.emptyList());
+        }
+
+        if (movie.getGenres() == null) {
+            movie.setGenres(Collections.emptyList());
+        }
+
+        return null;
+    }
+}
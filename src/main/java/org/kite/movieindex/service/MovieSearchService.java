@@ -0,0 +1,176 @@
+package org.kite.movieindex.service;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.kite.movieindex.dao.IndexField;
+import org.kite.movieindex.dao.MovieIndexer;
+import org.kite.movieindex.dao.SearchMetrics;
+import org.kite.movieindex.dao.TextQueryParser;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Group;
+import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.SearchResult;
+import org.kite.movieindex.entity.Suggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs {@link FilterForm}s against the index, answering repeated ones from a result cache. Cached results are
+ * shared between callers and must not be modified.
+ */
+@Service
+public class MovieSearchService {
+    private static final Logger SLOW_QUERY_LOGGER = LoggerFactory.getLogger("org.kite.movieindex.slowQueries");
+
+    @Autowired
+    private MovieIndexer indexer;
+
+    @Value("${main.cache.maxEntries}")
+    private int cacheMaxEntries = 10000; // 0 to disable caching
+
+    @Value("${main.cache.maxWeight}")
+    private long cacheMaxWeight = 1000000; // movies and groups held by the cache in total
+
+    @Value("${main.search.fuzzy.enabled}")
+    private boolean fuzzyEnabled = true; // retry text filters fuzzily when they match nothing exactly
+
+    @Value("${main.search.fuzzy.maxEdits}")
+    private int fuzzyMaxEdits = 1;
+
+    @Value("${main.search.fuzzy.prefixLength}")
+    private int fuzzyPrefixLength = 2; // leading characters that must match exactly, keeps term expansion cheap
+
+    @Value("${main.search.fuzzy.maxExpansions}")
+    private int fuzzyMaxExpansions = 50; // index terms a misspelled token may stand for
+
+    @Value("${main.search.slowQueryMs}")
+    private long slowQueryMs = 500; // searches taking longer are logged with a per-stage breakdown, -1 to disable
+
+    private TextQueryParser queryParser;
+    private ResultCache<SearchResult<Movie>> searchCache;
+    private ResultCache<Map<IndexField, List<Group>>> groupCache;
+
+    @PostConstruct
+    public void init() {
+        queryParser = new TextQueryParser(new StandardAnalyzer(), fuzzyMaxEdits, fuzzyPrefixLength,
+                fuzzyMaxExpansions);
+        searchCache = new ResultCache<>(cacheMaxEntries, cacheMaxWeight, r -> r.getResults().size() + 1);
+        groupCache = new ResultCache<>(cacheMaxEntries, cacheMaxWeight,
+                r -> r.values().stream().mapToInt(List::size).sum() + 1);
+    }
+
+    public SearchResult<Movie> search(FilterForm form) throws IOException {
+        String key = form.buildCacheKey();
+        long generation = indexer.getGeneration();
+
+        SearchResult<Movie> result = searchCache.get(key, generation);
+        if (result == null) {
+            indexer.getMetrics().startTrace();
+            try {
+                result = search(form, false);
+                if (result.getTotalResultsCount() == 0 && fuzzyEnabled && form.hasTextFilters()) {
+                    result = search(form, true);
+                }
+            } finally {
+                logIfSlow(key, indexer.getMetrics().endTrace());
+            }
+
+            searchCache.put(key, result, generation);
+        }
+
+        return result;
+    }
+
+    private SearchResult<Movie> search(FilterForm form, boolean fuzzy) throws IOException {
+        long start = System.nanoTime();
+        Query query = form.buildQuery(queryParser, fuzzy);
+        Sort sort = form.buildSort();
+        indexer.getMetrics().record(SearchMetrics.Stage.QUERY_BUILD, start);
+
+        if (form.getCursor() != null) {
+            return indexer.search(query, sort, form.getCursor(), form.getPageSize(), form.buildFieldsToLoad());
+        } else {
+            return indexer.search(query, sort, form.getPage(), form.getPageSize(), form.buildFieldsToLoad());
+        }
+    }
+
+    public List<Group> groupBy(FilterForm form, IndexField groupBy) throws IOException {
+        return groupBy(form, EnumSet.of(groupBy)).get(groupBy);
+    }
+
+    public Map<IndexField, List<Group>> groupBy(FilterForm form, Set<IndexField> groupBy) throws IOException {
+        String key = form.buildFilterCacheKey() + "|groupBy=" + EnumSet.copyOf(groupBy);
+        long generation = indexer.getGeneration();
+
+        Map<IndexField, List<Group>> result = groupCache.get(key, generation);
+        if (result == null) {
+            indexer.getMetrics().startTrace();
+            try {
+                result = groupBy(form, groupBy, false);
+                // Rating always has all its ranges, so look for a non-zero count rather than for empty groups
+                if (result.values().stream().allMatch(l -> l.stream().allMatch(g -> g.getValue() == 0))
+                        && fuzzyEnabled && form.hasTextFilters()) {
+                    result = groupBy(form, groupBy, true);
+                }
+            } finally {
+                logIfSlow(key, indexer.getMetrics().endTrace());
+            }
+
+            groupCache.put(key, result, generation);
+        }
+
+        return result;
+    }
+
+    private Map<IndexField, List<Group>> groupBy(FilterForm form, Set<IndexField> groupBy, boolean fuzzy)
+            throws IOException {
+        long start = System.nanoTime();
+        Query query = form.buildQuery(queryParser, fuzzy);
+        indexer.getMetrics().record(SearchMetrics.Stage.QUERY_BUILD, start);
+
+        return indexer.groupBy(query, groupBy);
+    }
+
+    private void logIfSlow(String key, SearchMetrics.Trace trace) {
+        long elapsed = trace.getElapsedMillis();
+        if (slowQueryMs >= 0 && elapsed >= slowQueryMs) {
+            SLOW_QUERY_LOGGER.warn("{}ms for {} ({})", elapsed, key, trace);
+        }
+    }
+
+    /**
+     * Not cached, the suggester answers from memory anyway.
+     */
+    public List<Suggestion> suggest(String text, int count) throws IOException {
+        return indexer.suggest(text, count);
+    }
+
+    /**
+     * @return latency of the search stages, ingest counters and result cache stats
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.putAll(indexer.getMetrics().getSnapshot());
+        getCacheStats().forEach((name, stats) -> metrics.put("cache." + name, stats));
+        return metrics;
+    }
+
+    public Map<String, ResultCache.Stats> getCacheStats() {
+        Map<String, ResultCache.Stats> stats = new LinkedHashMap<>();
+        stats.put("search", searchCache.getStats());
+        stats.put("groupBy", groupCache.getStats());
+        return stats;
+    }
+}
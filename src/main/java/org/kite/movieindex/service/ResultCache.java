@@ -0,0 +1,132 @@
+package org.kite.movieindex.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * LRU cache of search results, bounded both by the number of entries and by their total weight. Entries belong to
+ * a generation of the index: once a newer generation is seen all of them are dropped, results computed for an older
+ * one are not stored.
+ */
+public class ResultCache<V> {
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToIntFunction<V> weigher;
+    private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75F, true);
+
+    private long generation;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maxEntries maximum number of entries, 0 disables the cache
+     * @param maxWeight maximum total weight of the entries
+     * @param weigher weight of a single value, e.g. the number of movies in it
+     */
+    public ResultCache(int maxEntries, long maxWeight, ToIntFunction<V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(String key, long generation) {
+        advance(generation);
+
+        V value = generation == this.generation ? entries.get(key) : null;
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return value;
+    }
+
+    public synchronized void put(String key, V value, long generation) {
+        advance(generation);
+
+        int valueWeight = weigher.applyAsInt(value);
+        if (generation != this.generation || maxEntries == 0 || valueWeight > maxWeight) {
+            return;
+        }
+
+        V old = entries.put(key, value);
+        if (old != null) {
+            weight -= weigher.applyAsInt(old);
+        }
+        weight += valueWeight;
+
+        Iterator<Map.Entry<String, V>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            weight -= weigher.applyAsInt(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(), weight);
+    }
+
+    private void advance(long generation) {
+        if (generation > this.generation) {
+            if (!entries.isEmpty()) {
+                invalidations++;
+            }
+
+            entries.clear();
+            weight = 0;
+            this.generation = generation;
+        }
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+        private final long weight;
+
+        public Stats(long hits, long misses, long evictions, long invalidations, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return how many times the whole cache was dropped because the index changed
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+    }
+}
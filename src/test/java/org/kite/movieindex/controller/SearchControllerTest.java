@@ -0,0 +1,100 @@
+package org.kite.movieindex.controller;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kite.movieindex.configuration.WebConfig;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.SearchResult;
+import org.kite.movieindex.service.MovieSearchService;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.internal.util.reflection.Whitebox;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class SearchControllerTest {
+    private MovieSearchService searchService = Mockito.mock(MovieSearchService.class);
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws Exception {
+        SearchController controller = new SearchController();
+        Whitebox.setInternalState(controller, "searchService", searchService);
+        Whitebox.setInternalState(controller, "executor", executor);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setMessageConverters(new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json()
+                        .modulesToInstall(new WebConfig().pairModule()).build()))
+                .build();
+
+        Movie movie = new Movie();
+        movie.setName("Pulp Fiction");
+        Mockito.when(searchService.search(Mockito.any()))
+                .thenReturn(new SearchResult<>(Collections.singletonList(movie), 1, 1));
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        MvcResult result = mockMvc.perform(get("/search").param("director", "Tarantino").param("ratingFrom", "7")
+                .param("orderBy[0].field", "RATING").param("orderBy[0].desc", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].name").value("Pulp Fiction"));
+
+        ArgumentCaptor<FilterForm> form = ArgumentCaptor.forClass(FilterForm.class);
+        Mockito.verify(searchService).search(form.capture());
+        Assert.assertEquals("Tarantino", form.getValue().getDirector());
+        Assert.assertEquals(7.0F, form.getValue().getRatingBetween().getLeft(), 0);
+        Assert.assertNull(form.getValue().getRatingBetween().getRight());
+        Assert.assertTrue(form.getValue().getOrderBy().get(0).isDesc());
+    }
+
+    @Test
+    public void testPost() throws Exception {
+        MvcResult result = mockMvc.perform(post("/search").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"searchString\": \"pulp\", \"ratingBetween\": {\"left\": 7.5, \"right\": 9},"
+                        + " \"releaseDateBetween\": {\"left\": 0}, \"genres\": {\"field\": [\"ACTION\"]}}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        ArgumentCaptor<FilterForm> form = ArgumentCaptor.forClass(FilterForm.class);
+        Mockito.verify(searchService).search(form.capture());
+        Assert.assertEquals(7.5F, form.getValue().getRatingBetween().getLeft(), 0);
+        Assert.assertEquals(9.0F, form.getValue().getRatingBetween().getRight(), 0);
+        Assert.assertEquals(0, form.getValue().getReleaseDateBetween().getLeft().getTime());
+        Assert.assertNull(form.getValue().getReleaseDateBetween().getRight());
+    }
+
+    @Test
+    public void testOverload() throws Exception {
+        executor.shutdown(); // rejects everything, like a full queue
+        mockMvc.perform(get("/search").param("searchString", "pulp"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+}
@@ -2,6 +2,17 @@ package org.kite.movieindex.dao;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.SortingMergePolicy;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.Sort;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -10,33 +21,49 @@ import org.kite.movieindex.entity.FilterForm;
 import org.kite.movieindex.entity.Genre;
 import org.kite.movieindex.entity.Group;
 import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.ReplicationCommit;
 import org.kite.movieindex.entity.SearchResult;
+import org.kite.movieindex.entity.Suggestion;
 import org.kite.movieindex.util.TestUtil;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 import org.mockito.internal.util.reflection.Whitebox;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 public class MovieIndexerTest {
     @Spy
     private MovieIndexer indexer = new MovieIndexer();
+    private final List<MovieIndexer> indexers = new ArrayList<>(); // created by tests, closed after them
 
     @Before
-    public void setUp() {
+    public void setUp() throws IOException {
         MockitoAnnotations.initMocks(MovieIndexerTest.class);
-        Whitebox.setInternalState(indexer, "mainIndex", new File("./test-index.luc"));
+        Whitebox.setInternalState(indexer, "mainIndexPath", "./test-index.luc");
+        Whitebox.setInternalState(indexer, "directoryType", DirectoryType.RAM);
+        Whitebox.setInternalState(indexer, "searchThreads", 2);
+        Whitebox.setInternalState(indexer, "parallelMinSegments", 1); // make sure searches go through the executor
+        Whitebox.setInternalState(indexer, "parallelMinDocs", 0);
+        indexer.init();
     }
 
     @Test
@@ -86,6 +113,31 @@ public class MovieIndexerTest {
         checkContainsString(res, "Willis");
     }
 
+    @Test
+    public void testTextQuery() throws IOException {
+        List<Movie> movies = createMovies();
+        indexer.index(movies);
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setSearchString("Quentin Tarantino");
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, 1, movies.size());
+        Assert.assertEquals(3, res.getTotalResultsCount().intValue());
+
+        filterForm = new FilterForm();
+        filterForm.setDirector("Tarantono");
+        res = indexer.search(filterForm.buildQuery(), null, 1, movies.size());
+        Assert.assertEquals(0, res.getTotalResultsCount().intValue());
+
+        TextQueryParser parser = new TextQueryParser(new StandardAnalyzer(), 1, 2, 50);
+        res = indexer.search(filterForm.buildQuery(parser, true), null, 1, movies.size());
+        Assert.assertEquals(3, res.getTotalResultsCount().intValue());
+        Assert.assertTrue(res.getResults().stream().allMatch(m -> m.getDirector().equals("Quentin Tarantino")));
+
+        filterForm.setDirector("Xarantino"); // the prefix has to match exactly
+        res = indexer.search(filterForm.buildQuery(parser, true), null, 1, movies.size());
+        Assert.assertEquals(0, res.getTotalResultsCount().intValue());
+    }
+
     @Test
     public void testSearchByGenre() throws IOException
     {
@@ -152,6 +204,56 @@ public class MovieIndexerTest {
         Assert.assertTrue(res.getResults().stream().allMatch(m -> m.getRating() >= 7.0 && m.getRating() <= 7.5));
     }
 
+    @Test
+    public void testFiltersDontScore() throws IOException {
+        indexer.index(createMovies());
+        @SuppressWarnings("unchecked")
+        ReferenceManager<IndexSearcher> searcherManager = (ReferenceManager<IndexSearcher>) Whitebox
+                .getInternalState(indexer, "searcherManager");
+        searcherManager.maybeRefreshBlocking();
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setSearchString("Movie");
+        Map<Integer, Float> scores = score(searcherManager, filterForm.buildQuery());
+
+        filterForm.setRatingBetween(new ImmutablePair<>(7.5F, 10.0F));
+        filterForm.setReleaseDateBetween(new ImmutablePair<>(
+                Date.from(LocalDate.of(1990, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant()),
+                Date.from(LocalDate.of(1995, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant())));
+        filterForm.setGenres(new FilterForm.FilterSection<>(Arrays.asList(Genre.ACTION, Genre.HORROR)));
+        Map<Integer, Float> filteredScores = score(searcherManager, filterForm.buildQuery());
+
+        Assert.assertFalse(filteredScores.isEmpty());
+        Assert.assertTrue(filteredScores.size() < scores.size());
+        filteredScores.forEach((doc, score) -> Assert.assertEquals(scores.get(doc), score, 0));
+    }
+
+    @Test
+    public void testQueryCache() throws IOException {
+        MovieIndexer cached = createIndexer(Collections.singletonMap("queryCacheMinIndexSize", 0));
+        cached.index(createMovies());
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setSearchString("Movie");
+        filterForm.setGenres(new FilterForm.FilterSection<>(Arrays.asList(Genre.ACTION, Genre.HORROR)));
+        for (int i = 0; i < 10; i++) { // filters are cached once they have been used a few times
+            Assert.assertEquals(6, cached.search(filterForm.buildQuery(), null, 1, 10)
+                    .getTotalResultsCount().intValue());
+        }
+
+        @SuppressWarnings("unchecked")
+        ReferenceManager<IndexSearcher> searcherManager = (ReferenceManager<IndexSearcher>) Whitebox
+                .getInternalState(cached, "searcherManager");
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            LRUQueryCache queryCache = (LRUQueryCache) searcher.getQueryCache();
+            Assert.assertTrue(queryCache.getCacheCount() > 0);
+            Assert.assertTrue(queryCache.getHitCount() > 0);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
     @Test
     public void testSorting() throws IOException {
         List<Movie> movies = createMovies();
@@ -201,6 +303,98 @@ public class MovieIndexerTest {
         }
     }
 
+    @Test
+    public void testCursorPaging() throws IOException {
+        List<Movie> movies = createMovies();
+        indexer.index(movies);
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setPageSize(2);
+        filterForm.setOrderBy(Arrays.asList(new FilterForm.OrderBy(IndexField.RATING, true),
+                new FilterForm.OrderBy(IndexField.NAME, false)));
+
+        List<Movie> found = new ArrayList<>();
+        do {
+            SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), filterForm.buildSort(),
+                    filterForm.getCursor(), filterForm.getPageSize());
+            Assert.assertEquals(movies.size(), res.getTotalResultsCount().intValue());
+            found.addAll(res.getResults());
+            filterForm.setCursor(res.getCursor());
+        } while (filterForm.getCursor() != null);
+
+        Assert.assertEquals(movies.size(), found.size());
+        Assert.assertEquals(movies.size(), found.stream().map(Movie::getName).distinct().count());
+        Assert.assertTrue(checkSorting(found, Comparator.comparing(Movie::getRating).reversed()
+                .thenComparing(Movie::getName)));
+
+        ByteArrayOutputStream forged = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(forged)) {
+            out.writeInt(0);
+            out.writeFloat(0);
+            out.writeInt(Integer.MAX_VALUE); // sort values count
+        }
+        List<String> badCursors = Arrays.asList(Base64.getUrlEncoder().encodeToString(forged.toByteArray()),
+                SearchCursor.encode(new FieldDoc(0, 0, new Object[] {42L, 42L})), // a long for the name
+                SearchCursor.encode(new FieldDoc(0, 0, new Object[] {8.0})));
+        for (String cursor : badCursors) {
+            try {
+                indexer.search(filterForm.buildQuery(), filterForm.buildSort(), cursor, filterForm.getPageSize());
+                Assert.fail("Cursor must be rejected: " + cursor);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testFieldProjection() throws IOException {
+        List<Movie> movies = createMovies();
+        indexer.index(movies);
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setFields(EnumSet.of(IndexField.NAME, IndexField.RATING));
+
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, filterForm.getPage(),
+                filterForm.getPageSize(), filterForm.buildFieldsToLoad());
+        Assert.assertEquals(movies.size(), res.getResults().size());
+        for (Movie m : res.getResults()) {
+            Assert.assertNotNull(m.getName());
+            Assert.assertNotNull(m.getRating());
+            Assert.assertNull(m.getDirector());
+            Assert.assertNull(m.getCast());
+            Assert.assertNull(m.getGenres());
+            Assert.assertNull(m.getReleaseDate());
+        }
+    }
+
+    @Test
+    public void testDocValuesHydration() throws IOException {
+        indexer.close();
+        Whitebox.setInternalState(indexer, "storeFields", false);
+        indexer.init();
+
+        List<Movie> movies = createMovies();
+        indexer.index(movies);
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setPageSize(movies.size());
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, filterForm.getPage(),
+                filterForm.getPageSize());
+        Assert.assertEquals(movies.size(), res.getResults().size());
+
+        Map<String, Movie> nameMovieMap = new HashMap<>();
+        movies.forEach(m -> nameMovieMap.put(m.getName(), m));
+        for (Movie m : res.getResults()) {
+            Movie movie = nameMovieMap.get(m.getName());
+            Assert.assertNotNull(movie);
+            Assert.assertEquals(movie.getDirector(), m.getDirector());
+            Assert.assertEquals(movie.getRating(), m.getRating());
+            Assert.assertEquals(movie.getReleaseDate(), m.getReleaseDate());
+            TestUtil.assertListEquals(movie.getGenres().stream().sorted().collect(Collectors.toList()), m.getGenres());
+            TestUtil.assertListEquals(movie.getCast().stream().sorted().collect(Collectors.toList()), m.getCast());
+        }
+    }
+
     private void testSorting(FilterForm filterForm, List<FilterForm.OrderBy> orderBy, Comparator<Movie> comparator) throws IOException {
         filterForm.setOrderBy(orderBy);
         SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), filterForm.buildSort(), filterForm.getPage(),
@@ -261,6 +455,429 @@ public class MovieIndexerTest {
         Assert.assertEquals(3, groups.stream().filter(g -> g.getName().equals("9")).findFirst().get().getValue().intValue());
     }
 
+    @Test
+    public void testUpdateAndDelete() throws IOException {
+        List<Movie> movies = withIds("", createMovies());
+        indexer.index(movies);
+        indexer.index(movies); // re-indexing replaces movies instead of adding copies
+
+        FilterForm filterForm = new FilterForm();
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, 1, movies.size());
+        Assert.assertEquals(movies.size(), res.getTotalResultsCount().intValue());
+
+        Movie updated = new Movie(movies.get(0));
+        updated.setName("Updated Movie");
+        indexer.update(updated);
+
+        filterForm.setSearchString("updated");
+        res = indexer.search(filterForm.buildQuery(), null, 1, movies.size());
+        Assert.assertEquals(1, res.getTotalResultsCount().intValue());
+        Assert.assertEquals(updated.getId(), res.getResults().get(0).getId());
+
+        indexer.delete(Arrays.asList("0", "1"));
+        res = indexer.search(new FilterForm().buildQuery(), null, 1, movies.size());
+        Assert.assertEquals(movies.size() - 2, res.getTotalResultsCount().intValue());
+        Assert.assertTrue(res.getResults().stream().noneMatch(m -> m.getId().equals("0") || m.getId().equals("1")));
+    }
+
+    @Test
+    public void testUpdateRating() throws IOException {
+        List<Movie> movies = withIds("", createMovies());
+        indexer.index(movies);
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setRatingBetween(new ImmutablePair<>(2.0F, 3.0F));
+        Assert.assertEquals(0, indexer.search(filterForm.buildQuery(), null, 1, movies.size())
+                .getTotalResultsCount().intValue());
+        Assert.assertTrue(MovieQueryCachingPolicy.readsUpdatableDocValues(filterForm.buildQuery()));
+
+        float oldRating = movies.get(0).getRating();
+        indexer.updateRatings(Collections.singletonMap("0", 2.5F));
+
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, 1, movies.size());
+        Assert.assertEquals(1, res.getTotalResultsCount().intValue());
+        Assert.assertEquals("0", res.getResults().get(0).getId());
+        Assert.assertEquals(2.5F, res.getResults().get(0).getRating(), 0);
+        Assert.assertEquals(movies.get(0).getName(), res.getResults().get(0).getName());
+
+        filterForm = new FilterForm();
+        filterForm.setOrderBy(Collections.singletonList(new FilterForm.OrderBy(IndexField.RATING, false)));
+        res = indexer.search(filterForm.buildQuery(), filterForm.buildSort(), 1, 1);
+        Assert.assertEquals("0", res.getResults().get(0).getId());
+
+        List<Group> groups = indexer.groupBy(new FilterForm().buildQuery(), IndexField.RATING);
+        Assert.assertEquals(1, groups.stream().filter(g -> g.getName().equals("2")).findFirst().get().getValue().intValue());
+        Assert.assertEquals(2, groups.stream().filter(g -> g.getName().equals(Integer.toString((int) oldRating)))
+                .findFirst().get().getValue().intValue());
+
+        indexer.updateRating("1", 2.2F); // visible after the next refresh only
+        @SuppressWarnings("unchecked")
+        ReferenceManager<IndexSearcher> searcherManager = (ReferenceManager<IndexSearcher>) Whitebox
+                .getInternalState(indexer, "searcherManager");
+        searcherManager.maybeRefreshBlocking();
+        filterForm = new FilterForm();
+        filterForm.setRatingBetween(new ImmutablePair<>(2.0F, 3.0F));
+        Assert.assertEquals(2, indexer.search(filterForm.buildQuery(), null, 1, movies.size())
+                .getTotalResultsCount().intValue());
+    }
+
+    @Test
+    public void testSuggest() throws IOException {
+        indexer.index(createMovies());
+        ((MovieSuggester) Whitebox.getInternalState(indexer, "suggester")).rebuild(); // don't wait for the rebuild
+
+        List<Suggestion> suggestions = indexer.suggest("taranti", 10);
+        Assert.assertEquals(3, suggestions.size());
+        Assert.assertEquals("Tarantino Movie 2", suggestions.get(0).getText());
+        Assert.assertEquals(IndexField.NAME, suggestions.get(0).getField());
+        Assert.assertEquals(9.0F, suggestions.get(0).getRating(), 0);
+
+        suggestions = indexer.suggest("quen", 10);
+        Assert.assertEquals(1, suggestions.size());
+        Assert.assertEquals("Quentin Tarantino", suggestions.get(0).getText());
+        Assert.assertEquals(IndexField.DIRECTOR, suggestions.get(0).getField());
+
+        @SuppressWarnings("unchecked")
+        ReferenceManager<IndexSearcher> searcherManager = (ReferenceManager<IndexSearcher>) Whitebox.getInternalState(
+                indexer, "searcherManager");
+        MovieSuggester suggester = new MovieSuggester(searcherManager, true, true);
+        suggester.rebuild();
+        suggestions = suggester.suggest("spielb", 10);
+        Assert.assertTrue(suggestions.stream().anyMatch(s -> s.getText().equals("Stievin Spielberg")));
+        Assert.assertTrue(suggestions.stream().anyMatch(s -> s.getText().equals("Spielberg Movie 0")));
+
+        suggestions = suggester.suggest("qentin", 10);
+        Assert.assertEquals("Quentin Tarantino", suggestions.get(0).getText());
+
+        suggestions = suggester.suggest("movie", Integer.MAX_VALUE); // mustn't overflow the doubled infix count
+        Assert.assertFalse(suggestions.isEmpty());
+        List<String> texts = suggestions.stream().map(Suggestion::getText).collect(Collectors.toList());
+        Assert.assertEquals(suggester.suggest("movie", 10).stream().map(Suggestion::getText)
+                .collect(Collectors.toList()), texts);
+        suggester.close();
+    }
+
+    @Test
+    public void testFailedCommit() throws IOException {
+        List<Movie> movies = createMovies();
+        indexer.index(movies);
+
+        @SuppressWarnings("unchecked")
+        List<IndexShard> shards = (List<IndexShard>) Whitebox.getInternalState(indexer, "shards");
+        IndexShard shard = shards.get(0);
+        IndexShard failing = Mockito.spy(shard);
+        Mockito.doThrow(new IOException("disk full")).when(failing).commit();
+        shards.set(0, failing);
+        try {
+            indexer.commit();
+            Assert.fail("Commit must fail");
+        } catch (IOException e) {
+            // expected, the changes are still to be committed
+        }
+        AtomicInteger uncommittedDocs = (AtomicInteger) Whitebox.getInternalState(indexer, "uncommittedDocs");
+        Assert.assertEquals(movies.size(), uncommittedDocs.get());
+
+        shards.set(0, shard);
+        indexer.commit();
+        Assert.assertEquals(0, uncommittedDocs.get());
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        List<Movie> movies = createMovies();
+        indexer.index(movies);
+
+        SearchMetrics metrics = indexer.getMetrics();
+        metrics.startTrace();
+        indexer.search(new FilterForm().buildQuery(), null, 1, 5);
+        FilterForm filterForm = new FilterForm(); // counts without a filter are precomputed, nothing is collected
+        filterForm.setDirector("Tarantino");
+        indexer.groupBy(filterForm.buildQuery(), IndexField.GENRE);
+        String breakdown = metrics.endTrace().toString();
+        Assert.assertTrue(breakdown, breakdown.contains("collect=") && breakdown.contains("load=")
+                && breakdown.contains("facet="));
+
+        Map<String, Map<String, Number>> snapshot = metrics.getSnapshot();
+        Assert.assertEquals(2L, snapshot.get("search.acquire").get("count"));
+        Assert.assertEquals(2L, snapshot.get("search.collect").get("count"));
+        Assert.assertEquals(1L, snapshot.get("search.load").get("count"));
+        Assert.assertEquals((long) movies.size(), snapshot.get("index.docs").get("count"));
+    }
+
+    @Test
+    public void testBulkIndex() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            movies.addAll(createMovies());
+        }
+
+        Assert.assertEquals(movies.size(), indexer.bulkIndex(movies.iterator()));
+
+        FilterForm filterForm = new FilterForm();
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, filterForm.getPage(),
+                filterForm.getPageSize());
+        Assert.assertEquals(movies.size(), res.getTotalResultsCount().intValue());
+
+        List<Group> groups = indexer.groupBy(filterForm.buildQuery(), IndexField.DIRECTOR);
+        Assert.assertTrue(groups.stream().allMatch(g -> g.getValue() == 300));
+    }
+
+    @Test
+    public void testGroupMultiple() throws IOException {
+        List<Movie> movies = createMovies();
+        indexer.index(movies);
+
+        Set<IndexField> fields = EnumSet.of(IndexField.DIRECTOR, IndexField.CAST, IndexField.GENRE, IndexField.YEAR,
+                IndexField.RATING);
+        Map<IndexField, List<Group>> groups = indexer.groupBy(new FilterForm().buildQuery(), fields);
+        Assert.assertEquals(fields, groups.keySet());
+
+        for (IndexField field : fields) {
+            List<Group> expected = indexer.groupBy(new FilterForm().buildQuery(), field);
+            Assert.assertEquals(expected.size(), groups.get(field).size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertEquals(expected.get(i).getName(), groups.get(field).get(i).getName());
+                Assert.assertEquals(expected.get(i).getValue(), groups.get(field).get(i).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testShards() throws IOException {
+        MovieIndexer sharded = createIndexer(Collections.singletonMap("shardCount", 3));
+        List<Movie> movies = withIds("", createMovies());
+        sharded.index(movies);
+        sharded.index(movies); // upserts have to find the movies in the shards they were routed to
+
+        @SuppressWarnings("unchecked")
+        List<IndexShard> shards = (List<IndexShard>) Whitebox.getInternalState(sharded, "shards");
+        for (IndexShard shard : shards) {
+            Assert.assertTrue(shard.getWriter().numDocs() > 0);
+        }
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setPageSize(2);
+        filterForm.setOrderBy(Collections.singletonList(new FilterForm.OrderBy(IndexField.RATING, true)));
+        List<Movie> found = new ArrayList<>();
+        do {
+            SearchResult<Movie> res = sharded.search(filterForm.buildQuery(), filterForm.buildSort(),
+                    filterForm.getCursor(), filterForm.getPageSize());
+            Assert.assertEquals(movies.size(), res.getTotalResultsCount().intValue());
+            found.addAll(res.getResults());
+            filterForm.setCursor(res.getCursor());
+        } while (filterForm.getCursor() != null);
+        Assert.assertEquals(movies.size(), found.stream().map(Movie::getId).distinct().count());
+        Assert.assertTrue(checkSorting(found, Comparator.comparing(Movie::getRating).reversed()));
+
+        List<Group> groups = sharded.groupBy(new FilterForm().buildQuery(), IndexField.DIRECTOR);
+        Assert.assertTrue(groups.stream().allMatch(g -> g.getValue() == 3));
+
+        sharded.delete(Arrays.asList("0", "1", "2"));
+        sharded.updateRatings(Collections.singletonMap("3", 1.0F));
+        Map<String, String> commitData = Collections.singletonMap("sequence", "42");
+        sharded.setCommitData(commitData);
+        sharded.commit();
+        Assert.assertEquals(commitData, sharded.getCommitData());
+        Assert.assertEquals(commitData, shards.get(0).getWriter().getCommitData());
+
+        filterForm = new FilterForm();
+        filterForm.setOrderBy(Collections.singletonList(new FilterForm.OrderBy(IndexField.RATING, false)));
+        SearchResult<Movie> res = sharded.search(filterForm.buildQuery(), filterForm.buildSort(), 1,
+                movies.size());
+        Assert.assertEquals(movies.size() - 3, res.getTotalResultsCount().intValue());
+        Assert.assertEquals("3", res.getResults().get(0).getId());
+    }
+
+    @Test
+    public void testReplica() throws IOException {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("mainIndexPath", "./test-primary.luc");
+        settings.put("directoryType", DirectoryType.NIO);
+        settings.put("shardCount", 2);
+        MovieIndexer primary = createIndexer(settings);
+        List<Movie> movies = withIds("", createMovies());
+        primary.index(movies);
+        primary.commit();
+
+        settings.put("mainIndexPath", "./test-replica.luc");
+        settings.put("directoryType", DirectoryType.RAM);
+        settings.put("replicationSource", "./test-primary.luc");
+        MovieIndexer replica = createIndexer(settings); // starts from a copy of the last commit
+        Query all = new FilterForm().buildQuery();
+        Assert.assertEquals(movies.size(), replica.search(all, null, 1, 1).getTotalResultsCount().intValue());
+        Assert.assertFalse(replica.replicate());
+
+        primary.delete(Arrays.asList("0", "1"));
+        primary.setCommitData(Collections.singletonMap("sequence", "1"));
+        primary.commit();
+        Assert.assertTrue(replica.replicate());
+        Assert.assertEquals(movies.size() - 2, replica.search(all, null, 1, 1).getTotalResultsCount()
+                .intValue());
+        Assert.assertEquals("1", replica.getCommitData().get("sequence"));
+
+        try {
+            replica.index(movies);
+            Assert.fail("Replicas must be read-only");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        ReplicationCommit commit = primary.getReplicationCommit(1);
+        Assert.assertTrue(commit.getFiles().containsKey(commit.getSegmentsFileName()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        primary.copyReplicationFile(1, commit.getSegmentsFileName(), out);
+        Assert.assertEquals(commit.getFiles().get(commit.getSegmentsFileName()).longValue(), out.size());
+    }
+
+    @Test
+    public void testGroupPrecomputed() throws IOException {
+        for (int batch = 0; batch < 2; batch++) { // one segment each
+            List<Movie> movies = withIds(batch + "-", createMovies());
+            indexer.index(movies);
+        }
+
+        Set<IndexField> fields = EnumSet.of(IndexField.DIRECTOR, IndexField.CAST, IndexField.GENRE,
+                IndexField.RELEASE_DATE, IndexField.RATING);
+        Query collected = new BooleanQuery.Builder() // matches the same movies, but isn't a MatchAllDocsQuery
+                .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST).build();
+        assertSameGroups(indexer.groupBy(collected, fields), indexer.groupBy(new FilterForm().buildQuery(), fields));
+
+        indexer.delete(Arrays.asList("0-0", "1-4"));
+        indexer.updateRatings(Collections.singletonMap("1-1", 2.5F));
+        Map<IndexField, List<Group>> groups = indexer.groupBy(new FilterForm().buildQuery(), fields);
+        Assert.assertEquals(1, groups.get(IndexField.RATING).get(2).getValue().intValue());
+        assertSameGroups(indexer.groupBy(collected, fields), groups);
+    }
+
+    private static void assertSameGroups(Map<IndexField, List<Group>> expected, Map<IndexField, List<Group>> actual) {
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((field, groups) -> {
+            Assert.assertEquals(groups.stream().map(g -> g.getName() + "=" + g.getValue()).collect(Collectors.toList()),
+                    actual.get(field).stream().map(g -> g.getName() + "=" + g.getValue()).collect(Collectors.toList()));
+        });
+    }
+
+    @Test
+    public void testIndexSort() throws IOException {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("indexSort", "RATING desc, RELEASE_DATE desc");
+        settings.put("searchThreads", 2);
+        settings.put("parallelMinSegments", 1);
+        settings.put("parallelMinDocs", 0);
+        MovieIndexer sorted = createIndexer(settings);
+        List<Movie> all = new ArrayList<>();
+        for (int batch = 0; batch < 4; batch++) {
+            List<Movie> movies = withIds(batch + "-", createMovies());
+            for (Movie m : movies) {
+                m.setRating(m.getRating() + batch / 10F);
+            }
+            sorted.index(movies);
+            all.addAll(movies);
+
+            if (batch == 2) { // the last batch stays in a flushed segment, that isn't sorted
+                @SuppressWarnings("unchecked")
+                List<IndexShard> shards = (List<IndexShard>) Whitebox.getInternalState(sorted, "shards");
+                shards.get(0).getWriter().forceMerge(1);
+            }
+        }
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setOrderBy(Collections.singletonList(new FilterForm.OrderBy(IndexField.RATING, true)));
+        List<Movie> found = new ArrayList<>();
+        for (int page = 1; page <= 3; page++) {
+            SearchResult<Movie> res = sorted.search(filterForm.buildQuery(), filterForm.buildSort(), page, 4);
+            Assert.assertEquals(all.size(), res.getTotalResultsCount().intValue());
+            found.addAll(res.getResults());
+        }
+        Assert.assertEquals(3L, sorted.getMetrics().getSnapshot().get("search.earlyTerminated").get("count"));
+
+        all.sort(Comparator.comparing(Movie::getRating).reversed());
+        Assert.assertEquals(all.subList(0, found.size()).stream().map(Movie::getRating)
+                .collect(Collectors.toList()), found.stream().map(Movie::getRating).collect(Collectors.toList()));
+
+        @SuppressWarnings("unchecked")
+        ReferenceManager<IndexSearcher> searcherManager = (ReferenceManager<IndexSearcher>) Whitebox
+                .getInternalState(sorted, "searcherManager");
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            Assert.assertTrue(SortingMergePolicy.isSorted(searcher.getIndexReader().leaves().get(0).reader(),
+                    (Sort) Whitebox.getInternalState(sorted, "mergeSort")));
+        } finally {
+            searcherManager.release(searcher);
+        }
+
+        FilterForm dateForm = new FilterForm(); // release dates are only in doc values then
+        dateForm.setReleaseDateBetween(new ImmutablePair<>(Date.from(LocalDate.of(1991, 1, 1)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant()), null));
+        Assert.assertEquals(all.size(), sorted.search(dateForm.buildQuery(), null, 1, 1).getTotalResultsCount()
+                .intValue());
+        dateForm.setReleaseDateBetween(new ImmutablePair<>(null, Date.from(LocalDate.of(1991, 12, 31)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant())));
+        Assert.assertEquals(12, sorted.search(dateForm.buildQuery(), null, 1, 1).getTotalResultsCount()
+                .intValue());
+
+        filterForm.setSearchString("tarantino");
+        SearchResult<Movie> res = sorted.search(filterForm.buildQuery(), filterForm.buildSort(), 1, 2);
+        Assert.assertEquals(12, res.getTotalResultsCount().intValue());
+        Assert.assertEquals(9.3F, res.getResults().get(0).getRating(), 0.001);
+
+        // Sorted by rating, so the movie is re-indexed rather than updated in the sorted segment
+        sorted.updateRatings(Collections.singletonMap("0-0", 10.0F));
+        res = sorted.search(new FilterForm().buildQuery(), filterForm.buildSort(), 1, 1);
+        Assert.assertEquals("0-0", res.getResults().get(0).getId());
+        Assert.assertEquals(all.size(), res.getTotalResultsCount().intValue());
+        Assert.assertEquals(all.get(0).getDirector(), res.getResults().get(0).getDirector());
+    }
+
+    @Test
+    public void testSortedRatingUpdate() throws IOException {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("indexSort", "RATING desc");
+        settings.put("docValuesHydration", true);
+        MovieIndexer sorted = createIndexer(settings);
+        Movie movie = createMovies().get(0);
+        movie.setId("1");
+        movie.setCast(Arrays.asList("Uma Thurman", "John Travolta", "Uma Thurman"));
+        sorted.index(Collections.singletonList(movie));
+
+        sorted.updateRatings(Collections.singletonMap("1", 9.5F));
+        Whitebox.setInternalState(sorted, "docValuesHydration", false); // see what was re-indexed
+        Movie updated = sorted.search(new MatchAllDocsQuery(), null, 1, 1).getResults().get(0);
+        Assert.assertEquals(9.5F, updated.getRating(), 0);
+        Assert.assertEquals(movie.getCast(), updated.getCast());
+
+        settings.put("storeFields", false);
+        MovieIndexer docValuesOnly = createIndexer(settings);
+        docValuesOnly.index(Collections.singletonList(movie));
+        try {
+            docValuesOnly.updateRating("1", 9.5F);
+            Assert.fail("Rating updates must be rejected without stored fields");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Creates an indexer on a RAM directory at ./test-index.luc unless the settings say otherwise. It's closed after
+     * the test, together with the ones created after it.
+     */
+    private MovieIndexer createIndexer(Map<String, Object> settings) throws IOException {
+        MovieIndexer created = new MovieIndexer();
+        Whitebox.setInternalState(created, "mainIndexPath", "./test-index.luc");
+        Whitebox.setInternalState(created, "directoryType", DirectoryType.RAM);
+        settings.forEach((field, value) -> Whitebox.setInternalState(created, field, value));
+        created.init();
+        indexers.add(0, created);
+        return created;
+    }
+
+    private static List<Movie> withIds(String prefix, List<Movie> movies) {
+        for (int i = 0; i < movies.size(); i++) {
+            movies.get(i).setId(prefix + i);
+        }
+        return movies;
+    }
+
     private List<Movie> createMovies() {
         List<String> cast1 = Arrays.asList("John Travolta", "Samuel L Jackson", "Uma Thurman");
         List<String> cast2 = Arrays.asList("Bruce Willis", "Will Smith", "Daniel Radckliff");
@@ -296,6 +913,17 @@ public class MovieIndexerTest {
         return movies;
     }
 
+    private static Map<Integer, Float> score(ReferenceManager<IndexSearcher> searcherManager, Query query)
+            throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return Arrays.stream(searcher.search(query, 100).scoreDocs)
+                    .collect(Collectors.toMap(sd -> sd.doc, sd -> sd.score));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
     private void makeMovieCopies(List<String> cast1, List<String> cast2, List<Movie> movies, Movie origin, LocalDate initDate) {
         for (int i = 0; i < 3; i++) {
             Movie m = new Movie(origin);
@@ -308,7 +936,12 @@ public class MovieIndexerTest {
     }
 
     @After
-    public void tearDown() {
+    public void tearDown() throws IOException {
+        for (MovieIndexer created : indexers) { // latest first, replicas before their primary
+            created.close();
+        }
+        FileUtils.deleteQuietly(new File("./test-primary.luc"));
+        indexer.close();
         File testIndexDir = new File("./test-index.luc");
         FileUtils.deleteQuietly(testIndexDir);
     }
@@ -0,0 +1,86 @@
+package org.kite.movieindex.ingest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kite.movieindex.dao.DirectoryType;
+import org.kite.movieindex.dao.MovieIndexer;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.SearchResult;
+import org.mockito.internal.util.reflection.Whitebox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ChangeLogTailerTest {
+    private static final String PULP_FICTION = "{\"op\": \"UPSERT\", \"movie\": {\"id\": \"1\", "
+            + "\"name\": \"Pulp Fiction\", \"director\": \"Quentin Tarantino\", \"releaseDate\": \"1994-10-14\", \"rating\": 8.9}}\n";
+    private static final String SIN_CITY = "{\"op\": \"UPSERT\", \"movie\": {\"id\": \"2\", \"name\": \"Sin City\", "
+            + "\"director\": \"Robert Rodriguez\", \"releaseDate\": \"2005-04-01\", \"rating\": 8.0}}\n";
+
+    private MovieIndexer indexer = new MovieIndexer();
+    private ChangeLogTailer tailer = new ChangeLogTailer();
+    private Path changeLog;
+
+    @Before
+    public void setUp() throws IOException {
+        Whitebox.setInternalState(indexer, "mainIndexPath", "./test-index.luc");
+        Whitebox.setInternalState(indexer, "directoryType", DirectoryType.RAM);
+        Whitebox.setInternalState(indexer, "commitInterval", 0L);
+        indexer.init();
+
+        changeLog = Files.createTempFile("changelog", ".jsonl");
+        Whitebox.setInternalState(tailer, "indexer", indexer);
+        Whitebox.setInternalState(tailer, "changeLog", changeLog);
+    }
+
+    @Test
+    public void testApplyPending() throws IOException {
+        String partial = "{\"op\": \"DELETE\", ";
+        Files.write(changeLog, (PULP_FICTION + SIN_CITY + "not json\n" + partial).getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(2, tailer.applyPending());
+        Assert.assertEquals(2, count());
+        long offset = (PULP_FICTION + SIN_CITY + "not json\n").getBytes(StandardCharsets.UTF_8).length;
+        Assert.assertEquals(offset, tailer.getOffset());
+
+        Assert.assertEquals(0, tailer.applyPending()); // the last line isn't complete yet
+
+        Files.write(changeLog, ("\"id\": \"1\"}\n" + PULP_FICTION.replace("8.9", "9.0") + "{\"op\": \"DELETE\", "
+                + "\"id\": \"1\"}\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Assert.assertEquals(3, tailer.applyPending());
+        Assert.assertEquals(1, count());
+
+        indexer.commit();
+        Assert.assertEquals(Long.toString(Files.size(changeLog)),
+                indexer.getCommitData().get(ChangeLogTailer.OFFSET_KEY));
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        String noId = PULP_FICTION.replace("\"id\": \"1\", ", "");
+        Files.write(changeLog, (PULP_FICTION + SIN_CITY + noId).getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(2, tailer.applyPending()); // an upsert without id can't be replayed safely
+        Assert.assertEquals(2, count());
+
+        Whitebox.setInternalState(tailer, "offset", 0L); // as after a restart from a commit before the batch
+        Assert.assertEquals(2, tailer.applyPending());
+        Assert.assertEquals(2, count());
+    }
+
+    private int count() throws IOException {
+        SearchResult<Movie> res = indexer.search(new FilterForm().buildQuery(), null, 1, 10);
+        return res.getTotalResultsCount();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        indexer.close();
+        Files.deleteIfExists(changeLog);
+    }
+}
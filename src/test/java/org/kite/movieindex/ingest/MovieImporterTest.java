@@ -0,0 +1,139 @@
+package org.kite.movieindex.ingest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kite.movieindex.dao.DirectoryType;
+import org.kite.movieindex.dao.IndexField;
+import org.kite.movieindex.dao.MovieIndexer;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Genre;
+import org.kite.movieindex.entity.Group;
+import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.SearchResult;
+import org.mockito.internal.util.reflection.Whitebox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+public class MovieImporterTest {
+    private MovieIndexer indexer = new MovieIndexer();
+    private MovieImporter importer = new MovieImporter();
+    private Path dump;
+
+    @Before
+    public void setUp() throws IOException {
+        Whitebox.setInternalState(indexer, "mainIndexPath", "./test-index.luc");
+        Whitebox.setInternalState(indexer, "directoryType", DirectoryType.RAM);
+        indexer.init();
+
+        Whitebox.setInternalState(importer, "indexer", indexer);
+        Whitebox.setInternalState(importer, "chunkSize", 2);
+    }
+
+    @Test
+    public void testImportCsv() throws IOException {
+        dump = Files.createTempFile("movies", ".csv");
+        Files.write(dump, Arrays.asList(
+                "name,director,cast,releaseDate,rating,genres",
+                "Pulp Fiction,Quentin Tarantino,John Travolta|Uma Thurman,1994-10-14,8.9,action|comedy",
+                "\"Lock, Stock and Two Smoking Barrels\",Guy Ritchie,Jason Statham,1998-08-28,8.2,comedy",
+                "Broken,Nobody,,not a date,5,horror",
+                "",
+                "Sin City,Robert Rodriguez,Bruce Willis,2005-04-01,8.0,ACTION"), StandardCharsets.UTF_8);
+
+        List<Long> errorLines = new ArrayList<>();
+        ImportReport report = importer.importDump(dump, DumpFormat.CSV, new ImportListener() {
+            @Override
+            public void onError(MalformedRecordException e) {
+                errorLines.add(e.getLineNumber());
+            }
+        });
+
+        Assert.assertEquals(4, report.getRead());
+        Assert.assertEquals(3, report.getIndexed());
+        Assert.assertEquals(1, report.getFailed());
+        Assert.assertEquals(Arrays.asList(4L), errorLines);
+
+        FilterForm filterForm = new FilterForm();
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, 1, 10);
+        Assert.assertEquals(3, res.getTotalResultsCount().intValue());
+        Movie lockStock = res.getResults().stream().filter(m -> m.getName().startsWith("Lock")).findFirst().get();
+        Assert.assertEquals("Lock, Stock and Two Smoking Barrels", lockStock.getName());
+        Assert.assertEquals(Arrays.asList(Genre.COMEDY), lockStock.getGenres());
+    }
+
+    @Test
+    public void testImportJsonLines() throws IOException {
+        dump = Files.createTempFile("movies", ".jsonl");
+        Files.write(dump, Arrays.asList(
+                "{\"name\": \"Pulp Fiction\", \"director\": \"Quentin Tarantino\", \"cast\": [\"Uma Thurman\"], "
+                        + "\"releaseDate\": \"1994-10-14\", \"rating\": 8.9, \"genres\": [\"action\", \"comedy\"]}",
+                "{\"name\": \"Broken\", ",
+                "{\"name\": \"No Director\", \"releaseDate\": \"1994-10-14\", \"rating\": 1}",
+                "{\"name\": \"Sin City\", \"director\": \"Robert Rodriguez\", \"releaseDate\": 1112313600000, "
+                        + "\"rating\": 8.0, \"unknown\": true}"), StandardCharsets.UTF_8);
+
+        ImportReport report = importer.importDump(dump);
+        Assert.assertEquals(2, report.getIndexed());
+        Assert.assertEquals(2, report.getFailed());
+        Assert.assertEquals(2, report.getErrors().size());
+
+        FilterForm filterForm = new FilterForm();
+        filterForm.setDirector("Rodriguez");
+        SearchResult<Movie> res = indexer.search(filterForm.buildQuery(), null, 1, 10);
+        Assert.assertEquals(1, res.getTotalResultsCount().intValue());
+        Assert.assertTrue(res.getResults().get(0).getCast().isEmpty());
+    }
+
+    @Test
+    public void testImportDatesInDefaultZone() throws IOException {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York")); // UTC midnight is still the day before there
+        try {
+            Path csv = Files.createTempFile("movies", ".csv");
+            dump = Files.createTempFile("movies", ".jsonl");
+            try {
+                Files.write(csv, Arrays.asList("1,Pulp Fiction,Quentin Tarantino,,1994-01-01,8.9,"),
+                        StandardCharsets.UTF_8);
+                Files.write(dump, Arrays.asList("{\"id\": \"2\", \"name\": \"Sin City\", "
+                        + "\"director\": \"Robert Rodriguez\", \"releaseDate\": \"1994-01-01\", \"rating\": 8.0}"),
+                        StandardCharsets.UTF_8);
+                importer.importDump(csv, DumpFormat.CSV, new ImportListener() {
+                });
+                importer.importDump(dump);
+            } finally {
+                Files.deleteIfExists(csv);
+            }
+
+            Date expected = Date.from(LocalDate.of(1994, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+            SearchResult<Movie> res = indexer.search(new FilterForm().buildQuery(), null, 1, 10);
+            Assert.assertEquals(2, res.getTotalResultsCount().intValue());
+            Assert.assertTrue(res.getResults().stream().allMatch(m -> m.getReleaseDate().equals(expected)));
+
+            List<Group> years = indexer.groupBy(new FilterForm().buildQuery(), IndexField.YEAR);
+            Assert.assertEquals(1, years.size());
+            Assert.assertEquals("1994", years.get(0).getName());
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        indexer.close();
+        if (dump != null) {
+            Files.deleteIfExists(dump);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.kite.movieindex.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kite.movieindex.dao.DirectoryType;
+import org.kite.movieindex.dao.IndexField;
+import org.kite.movieindex.dao.MovieIndexer;
+import org.kite.movieindex.entity.FilterForm;
+import org.kite.movieindex.entity.Genre;
+import org.kite.movieindex.entity.Group;
+import org.kite.movieindex.entity.Movie;
+import org.kite.movieindex.entity.SearchResult;
+import org.mockito.internal.util.reflection.Whitebox;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class MovieSearchServiceTest {
+    private MovieIndexer indexer = new MovieIndexer();
+    private MovieSearchService service = new MovieSearchService();
+
+    @Before
+    public void setUp() throws IOException {
+        Whitebox.setInternalState(indexer, "mainIndexPath", "./test-index.luc");
+        Whitebox.setInternalState(indexer, "directoryType", DirectoryType.RAM);
+        indexer.init();
+
+        Whitebox.setInternalState(service, "indexer", indexer);
+        service.init();
+
+        indexer.index(Collections.singletonList(createMovie("1", "Pulp Fiction", "Quentin Tarantino")));
+    }
+
+    @Test
+    public void testCachedSearch() throws IOException {
+        SearchResult<Movie> res = service.search(directorForm("Tarantino"));
+        Assert.assertEquals(1, res.getTotalResultsCount().intValue());
+
+        // The same query for the analyzer, so the same cache entry
+        Assert.assertSame(res, service.search(directorForm("Tarantino")));
+        Assert.assertSame(res, service.search(directorForm(" tarantino")));
+        Assert.assertSame(res, service.search(directorForm("TARANTINO ")));
+        Assert.assertEquals(3, service.getCacheStats().get("search").getHits());
+        Assert.assertEquals(1, service.getCacheStats().get("search").getMisses());
+
+        List<Group> groups = service.groupBy(directorForm("tarantino"), IndexField.GENRE);
+        Assert.assertSame(groups, service.groupBy(directorForm("Tarantino"), IndexField.GENRE));
+    }
+
+    @Test
+    public void testRefreshInvalidates() throws IOException {
+        SearchResult<Movie> res = service.search(directorForm("Tarantino"));
+        List<Group> groups = service.groupBy(directorForm("Tarantino"), IndexField.GENRE);
+
+        indexer.index(Collections.singletonList(createMovie("2", "Kill Bill", "Quentin Tarantino"))); // refreshes
+
+        SearchResult<Movie> refreshed = service.search(directorForm("Tarantino"));
+        Assert.assertNotSame(res, refreshed);
+        Assert.assertEquals(2, refreshed.getTotalResultsCount().intValue());
+        Assert.assertEquals(2, service.groupBy(directorForm("Tarantino"), IndexField.GENRE).get(0).getValue()
+                .intValue());
+        Assert.assertEquals(1, groups.get(0).getValue().intValue());
+        Assert.assertEquals(1, service.getCacheStats().get("search").getInvalidations());
+    }
+
+    private static FilterForm directorForm(String director) {
+        FilterForm form = new FilterForm();
+        form.setDirector(director);
+        return form;
+    }
+
+    private static Movie createMovie(String id, String name, String director) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setName(name);
+        movie.setDirector(director);
+        movie.setCast(Collections.singletonList("Uma Thurman"));
+        movie.setGenres(Collections.singletonList(Genre.ACTION));
+        movie.setRating(8.0F);
+        movie.setReleaseDate(new Date());
+        return movie;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        indexer.close();
+    }
+}
@@ -0,0 +1,44 @@
+package org.kite.movieindex.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ResultCacheTest {
+    @Test
+    public void testEviction() {
+        ResultCache<List<String>> cache = new ResultCache<>(2, 5, List::size);
+        cache.put("a", Arrays.asList("1", "2"), 0);
+        cache.put("b", Arrays.asList("1"), 0);
+        Assert.assertNotNull(cache.get("a", 0)); // "b" is the least recently used now
+
+        cache.put("c", Arrays.asList("1"), 0);
+        Assert.assertNull(cache.get("b", 0));
+        Assert.assertNotNull(cache.get("a", 0));
+        Assert.assertNotNull(cache.get("c", 0));
+
+        cache.put("d", Arrays.asList("1", "2", "3"), 0); // over the weight limit together with "a"
+        Assert.assertNull(cache.get("a", 0));
+        Assert.assertNotNull(cache.get("d", 0));
+
+        ResultCache.Stats stats = cache.getStats();
+        Assert.assertEquals(2, stats.getEvictions());
+        Assert.assertEquals(4, stats.getHits());
+        Assert.assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    public void testGenerations() {
+        ResultCache<List<String>> cache = new ResultCache<>(10, 100, List::size);
+        cache.put("a", Arrays.asList("1"), 1);
+        Assert.assertNotNull(cache.get("a", 1));
+
+        Assert.assertNull(cache.get("a", 2));
+        Assert.assertEquals(1, cache.getStats().getInvalidations());
+
+        cache.put("a", Arrays.asList("1"), 1); // computed on a reader that is gone already
+        Assert.assertNull(cache.get("a", 2));
+    }
+}